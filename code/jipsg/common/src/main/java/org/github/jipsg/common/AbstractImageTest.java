@@ -16,6 +16,9 @@
  */
 package org.github.jipsg.common;
 
+import org.github.jipsg.common.image.backend.ImageBackend;
+import org.github.jipsg.common.image.io.ImageFormat;
+
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
@@ -24,9 +27,10 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
- * Abstract test class for image testing.
+ * Abstract test class for image testing - every test base class is also an
+ * {@link ImageBackend} so that the libraries can be combined using a router.
  */
-public abstract class AbstractImageTest {
+public abstract class AbstractImageTest implements ImageBackend {
 
     private String moduleName;
     private File imageDirectory;
@@ -39,6 +43,26 @@ public abstract class AbstractImageTest {
 
     public abstract void writeBufferedImage(BufferedImage bufferedImage, float quality, int dpi, String formatName, File file) throws Exception;
 
+    /**
+     * Create a buffered image fitting into the given boundary. The default implementation
+     * decodes the full-resolution image before resampling it - libraries supporting
+     * subsampled decoding should override this method.
+     */
+    public BufferedImage createBufferedImage(final File file, int width, int height) throws Exception {
+        return resample(createBufferedImage(file), width, height);
+    }
+
+    public String getName() {
+        return moduleName != null ? moduleName : getClass().getSimpleName();
+    }
+
+    /**
+     * Assume that every image format is supported and rely on the router's fallback.
+     */
+    public boolean canDecode(ImageFormat imageFormat) {
+        return true;
+    }
+
     public void setup() {
         File currDirectory = new File("");
         if (currDirectory.getAbsolutePath().endsWith("jipsg")) {
@@ -0,0 +1,486 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import javax.imageio.IIOException;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous facade of <code>BufferedImageFactory</code> and <code>BufferedImageOperations</code>
+ * for pipelining lots of conversions.
+ * <p>
+ * Blocking I/O (reading input streams, URLs and small files, writing the encoded
+ * images) runs on the I/O executor while decoding, scaling and encoding run on a
+ * CPU executor sized to the number of processors - a slow network read never
+ * occupies a CPU thread. The default I/O executor uses virtual threads when running
+ * on Java 21 or later, otherwise a bounded pool of platform threads. Decoding reserves
+ * the raster memory from the <code>MemoryAdmissionController</code> of the
+ * <code>BufferedImageFactory</code>, so CPU threads wait instead of running out of memory.
+ * <p>
+ * The number of jobs in flight is bounded - once all are taken the calling thread
+ * waits for a job to complete instead of queuing an unbounded number of images. A
+ * job started by a stage running on the executors of the processor, e.g. a resample
+ * chained to a decode with <code>thenCompose()</code>, is part of an admitted job and
+ * never waits.
+ */
+public class AsyncImageProcessor implements Closeable {
+
+    /** Number of platform I/O threads per processor if virtual threads are not available */
+    public static final int IO_THREADS_PER_PROCESSOR = 4;
+
+    /** Number of jobs in flight per CPU thread before the calling thread waits */
+    public static final int JOBS_PER_THREAD = 4;
+
+    /** Default maximum of the input bytes being buffered when reading input streams and URLs */
+    public static final long DEFAULT_MAX_INPUT_BYTES = 256L * 1024 * 1024;
+
+    /** Largest input being buffered in a byte array */
+    private static final int MAX_BUFFERED_BYTES = Integer.MAX_VALUE - 8;
+
+    /** The processor whose stage is running on the current thread */
+    private static final ThreadLocal<AsyncImageProcessor> stageProcessor = new ThreadLocal<AsyncImageProcessor>();
+
+    private final Executor ioExecutor;
+    private final Executor cpuExecutor;
+    private final Executor ioStageExecutor;
+    private final Executor cpuStageExecutor;
+    private final Semaphore jobPermits;
+    private final boolean ownsExecutors;
+    private volatile ImageLimits imageLimits = ImageLimits.UNLIMITED;
+    private volatile long maxInputBytes = DEFAULT_MAX_INPUT_BYTES;
+
+    /**
+     * Create a processor with its own I/O and CPU executors.
+     */
+    public AsyncImageProcessor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a processor with its own I/O and CPU executors.
+     *
+     * @param cpuThreads number of threads decoding, scaling and encoding images
+     */
+    public AsyncImageProcessor(int cpuThreads) {
+        if (cpuThreads <= 0) {
+            throw new IllegalArgumentException("Invalid number of CPU threads : " + cpuThreads);
+        }
+        this.ioExecutor = createIoExecutor();
+        this.cpuExecutor = createPlatformExecutor("jipsg-cpu-", cpuThreads);
+        this.ioStageExecutor = createStageExecutor(ioExecutor);
+        this.cpuStageExecutor = createStageExecutor(cpuExecutor);
+        this.jobPermits = new Semaphore(JOBS_PER_THREAD * cpuThreads);
+        this.ownsExecutors = true;
+    }
+
+    /**
+     * Create a processor using the given executors - they are not shut down on close.
+     */
+    public AsyncImageProcessor(Executor ioExecutor, Executor cpuExecutor) {
+        this(ioExecutor, cpuExecutor, JOBS_PER_THREAD * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a processor using the given executors - they are not shut down on close.
+     *
+     * @param ioExecutor  the executor of blocking I/O
+     * @param cpuExecutor the executor decoding, scaling and encoding images
+     * @param maxJobs     the maximum number of jobs in flight
+     */
+    public AsyncImageProcessor(Executor ioExecutor, Executor cpuExecutor, int maxJobs) {
+        if (maxJobs <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of jobs : " + maxJobs);
+        }
+        this.ioExecutor = ioExecutor;
+        this.cpuExecutor = cpuExecutor;
+        this.ioStageExecutor = createStageExecutor(ioExecutor);
+        this.cpuStageExecutor = createStageExecutor(cpuExecutor);
+        this.jobPermits = new Semaphore(maxJobs);
+        this.ownsExecutors = false;
+    }
+
+    public Executor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    public Executor getCpuExecutor() {
+        return cpuExecutor;
+    }
+
+    public ImageLimits getImageLimits() {
+        return imageLimits;
+    }
+
+    /**
+     * Set the budget of the decoded images.
+     */
+    public void setImageLimits(ImageLimits imageLimits) {
+        this.imageLimits = imageLimits;
+    }
+
+    public long getMaxInputBytes() {
+        return maxInputBytes;
+    }
+
+    /**
+     * Set the maximum of the encoded input bytes being buffered when reading input
+     * streams, URLs and small files.
+     */
+    public void setMaxInputBytes(long maxInputBytes) {
+        if (maxInputBytes <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of input bytes : " + maxInputBytes);
+        }
+        this.maxInputBytes = maxInputBytes;
+    }
+
+    /**
+     * Decode the image - see <code>BufferedImageFactory.create()</code> for the supported
+     * sources, additionally a <code>URL</code> is supported.
+     */
+    public CompletableFuture<BufferedImage> decodeAsync(Object source) {
+        return decodeAsync(source, null);
+    }
+
+    /**
+     * Decode the image using source subsampling so that it fits into the boundary.
+     *
+     * @param source   the image source
+     * @param boundary the bounding box or null to decode the full-resolution image
+     */
+    public CompletableFuture<BufferedImage> decodeAsync(final Object source, final Dimension boundary) {
+        return admit(new Supplier<CompletableFuture<BufferedImage>>() {
+            public CompletableFuture<BufferedImage> get() {
+                return decode(source, boundary, imageLimits, maxInputBytes);
+            }
+        });
+    }
+
+    /**
+     * Apply the image operations.
+     */
+    public CompletableFuture<BufferedImage> applyAsync(final BufferedImage bufferedImage, final BufferedImageOp... bufferedImageOps) {
+        return admit(new Callable<BufferedImage>() {
+            public BufferedImage call() {
+                return BufferedImageOperations.apply(bufferedImage, bufferedImageOps);
+            }
+        }, cpuStageExecutor);
+    }
+
+    /**
+     * Scale the image to fit into the boundary while keeping its aspect ratio.
+     */
+    public CompletableFuture<BufferedImage> resampleAsync(final BufferedImage bufferedImage, final Dimension boundary) {
+        return admit(new Callable<BufferedImage>() {
+            public BufferedImage call() {
+                Dimension imageDimension = new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+                Dimension scaledDimension = BufferedImageUtils.getScaledDimension(imageDimension, boundary);
+                return BufferedImageOperations.resample(
+                        bufferedImage,
+                        Math.max(1, scaledDimension.width),
+                        Math.max(1, scaledDimension.height));
+            }
+        }, cpuStageExecutor);
+    }
+
+    /**
+     * Encode the image in memory.
+     *
+     * @param formatName the informal format name, e.g. "png"
+     */
+    public CompletableFuture<byte[]> encodeAsync(final BufferedImage bufferedImage, final String formatName) {
+        return admit(new Supplier<CompletableFuture<byte[]>>() {
+            public CompletableFuture<byte[]> get() {
+                return encode(bufferedImage, formatName);
+            }
+        });
+    }
+
+    /**
+     * Encode the image in memory and write it to the file on the I/O executor.
+     */
+    public CompletableFuture<File> encodeAsync(final BufferedImage bufferedImage, final String formatName, final File file) {
+        return admit(new Supplier<CompletableFuture<File>>() {
+            public CompletableFuture<File> get() {
+                return encode(bufferedImage, formatName).thenApplyAsync(new Function<byte[], File>() {
+                    public File apply(byte[] bytes) {
+                        try {
+                            OutputStream outputStream = new FileOutputStream(file);
+                            try {
+                                outputStream.write(bytes);
+                            } finally {
+                                outputStream.close();
+                            }
+                            return file;
+                        } catch (IOException e) {
+                            throw new CompletionException(e);
+                        }
+                    }
+                }, ioStageExecutor);
+            }
+        });
+    }
+
+    /**
+     * Shut down the executors created by this processor.
+     */
+    public void close() {
+        if (ownsExecutors) {
+            ((ExecutorService) ioExecutor).shutdown();
+            ((ExecutorService) cpuExecutor).shutdown();
+        }
+    }
+
+    /**
+     * Create an executor for blocking I/O - this uses a virtual thread per task on
+     * Java 21 and later and a bounded pool of platform threads otherwise.
+     */
+    public static ExecutorService createIoExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return createPlatformExecutor("jipsg-io-", IO_THREADS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Create a fixed pool of daemon threads - the queue is not bounded since the
+     * processor bounds the jobs in flight, a pool thread never runs a task inline.
+     */
+    private static ExecutorService createPlatformExecutor(final String namePrefix, int threads) {
+        ThreadPoolExecutor result = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        result.allowCoreThreadTimeOut(true);
+        return result;
+    }
+
+    /**
+     * Wrap the executor so that the tasks know they run a stage of this processor -
+     * including the dependent stages completed by them.
+     */
+    private Executor createStageExecutor(final Executor executor) {
+        return new Executor() {
+            public void execute(final Runnable runnable) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        AsyncImageProcessor previous = stageProcessor.get();
+                        stageProcessor.set(AsyncImageProcessor.this);
+                        try {
+                            runnable.run();
+                        } finally {
+                            if (previous != null) {
+                                stageProcessor.set(previous);
+                            } else {
+                                stageProcessor.remove();
+                            }
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Start a job once a permit is available - the calling thread waits unless it
+     * runs a stage of this processor. The permit is released when the job completes.
+     */
+    private <T> CompletableFuture<T> admit(Supplier<CompletableFuture<T>> job) {
+        if (stageProcessor.get() == this) {
+            return job.get();
+        }
+
+        try {
+            jobPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<T> result = new CompletableFuture<T>();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        CompletableFuture<T> result;
+        try {
+            result = job.get();
+        } catch (RuntimeException e) {
+            jobPermits.release();
+            throw e;
+        }
+
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            public void accept(T value, Throwable throwable) {
+                jobPermits.release();
+            }
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> admit(final Callable<T> callable, final Executor executor) {
+        return admit(new Supplier<CompletableFuture<T>>() {
+            public CompletableFuture<T> get() {
+                return supplyAsync(callable, executor);
+            }
+        });
+    }
+
+    /**
+     * Read blocking sources on the I/O executor and decode on the CPU executor.
+     */
+    private CompletableFuture<BufferedImage> decode(final Object source, final Dimension boundary, final ImageLimits limits, final long maxInputBytes) {
+        if (isBlockingSource(source)) {
+            return supplyAsync(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    return readBytes(source, maxInputBytes);
+                }
+            }, ioStageExecutor).thenCompose(new Function<byte[], CompletableFuture<BufferedImage>>() {
+                public CompletableFuture<BufferedImage> apply(byte[] bytes) {
+                    return decode(bytes, boundary, limits, maxInputBytes);
+                }
+            });
+        }
+
+        return supplyAsync(new Callable<BufferedImage>() {
+            public BufferedImage call() throws Exception {
+                return boundary != null ? BufferedImageFactory.create(source, boundary, limits) : BufferedImageFactory.create(source, limits);
+            }
+        }, cpuStageExecutor);
+    }
+
+    private CompletableFuture<byte[]> encode(final BufferedImage bufferedImage, final String formatName) {
+        return supplyAsync(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                if (!BufferedImageFactory.writeBufferedImage(bufferedImage, formatName, outputStream)) {
+                    throw new IOException("No image writer found for : " + formatName);
+                }
+                return outputStream.toByteArray();
+            }
+        }, cpuStageExecutor);
+    }
+
+    /**
+     * Sources where reading the bytes blocks - small files are read on the I/O executor
+     * as well while larger ones are memory mapped by the decoder.
+     */
+    private static boolean isBlockingSource(Object source) {
+        if (source instanceof InputStream || source instanceof URL) {
+            return true;
+        } else if (source instanceof File) {
+            return ((File) source).length() < BufferedImageFactory.getMappingThreshold();
+        } else if (source instanceof Path) {
+            return isBlockingSource(((Path) source).toFile());
+        } else {
+            return false;
+        }
+    }
+
+    private static byte[] readBytes(Object source, long maxBytes) throws IOException {
+        if (source instanceof Path) {
+            return readBytes(((Path) source).toFile(), maxBytes);
+        } else if (source instanceof File) {
+            File file = (File) source;
+            checkByteCount(file.length(), maxBytes);
+            return Files.readAllBytes(file.toPath());
+        }
+
+        if (source instanceof URL) {
+            InputStream inputStream = ((URL) source).openStream();
+            try {
+                return readBytes(inputStream, maxBytes);
+            } finally {
+                inputStream.close();
+            }
+        }
+
+        // like BufferedImageFactory the caller's input stream is not closed
+        return readBytes((InputStream) source, maxBytes);
+    }
+
+    /**
+     * Read the input stream into memory.
+     *
+     * @param maxBytes the maximum number of bytes being read
+     * @throws IIOException the input exceeds the maximum number of bytes
+     */
+    static byte[] readBytes(InputStream inputStream, long maxBytes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        long byteCount = 0;
+        int count;
+        while ((count = inputStream.read(buffer)) >= 0) {
+            byteCount += count;
+            checkByteCount(byteCount, maxBytes);
+            outputStream.write(buffer, 0, count);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void checkByteCount(long byteCount, long maxBytes) throws IIOException {
+        if (byteCount > Math.min(MAX_BUFFERED_BYTES, maxBytes)) {
+            throw new IIOException("Input exceeds the maximum of " + maxBytes + " bytes : " + byteCount);
+        }
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(final Callable<T> callable, Executor executor) {
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            public T get() {
+                try {
+                    return callable.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, executor);
+    }
+}
@@ -20,31 +20,490 @@ package org.github.jipsg.common.image;
  * ImageIO-based factory to handle BufferedImage.
  */
 
-import javax.imageio.ImageIO;
+import org.github.jipsg.common.image.io.ByteBufferImageInputStream;
+import org.github.jipsg.common.image.io.ImageCodecPool;
+import org.github.jipsg.common.image.io.MappedImageSource;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.awt.image.SampleModel;
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Iterator;
 
 public class BufferedImageFactory {
 
+    /** Local files of at least this size are read through a shared memory mapping */
+    public static final long DEFAULT_MAPPING_THRESHOLD = 4 * 1024 * 1024;
+
+    private static volatile long mappingThreshold = DEFAULT_MAPPING_THRESHOLD;
+
+    private static volatile MemoryAdmissionController memoryAdmissionController = MemoryAdmissionController.getInstance();
+
+    public static long getMappingThreshold() {
+        return mappingThreshold;
+    }
+
+    /**
+     * Set the file size from which on local files are memory-mapped instead of
+     * being read through a <code>RandomAccessFile</code>, use <code>Long.MAX_VALUE</code>
+     * to disable memory mapping.
+     */
+    public static void setMappingThreshold(long mappingThreshold) {
+        BufferedImageFactory.mappingThreshold = mappingThreshold;
+    }
+
+    public static MemoryAdmissionController getMemoryAdmissionController() {
+        return memoryAdmissionController;
+    }
+
+    /**
+     * Set the controller the raster memory is reserved from before decoding an image,
+     * the shared instance by default - null decodes without admission control.
+     */
+    public static void setMemoryAdmissionController(MemoryAdmissionController memoryAdmissionController) {
+        BufferedImageFactory.memoryAdmissionController = memoryAdmissionController;
+    }
+
+    /**
+     * Create a buffered image from a <code>File</code>, a file name, a <code>Path</code>,
+     * an <code>InputStream</code>, a <code>byte[]</code>, a <code>ByteBuffer</code> or
+     * a <code>MappedImageSource</code>.
+     *
+     * @param source the image source
+     * @return the buffered image or null if no image reader was found
+     */
     public static BufferedImage create(Object source) throws Exception {
+        return create(source, ImageLimits.UNLIMITED);
+    }
+
+    public static BufferedImage create(File file) throws Exception {
+        return create((Object) file);
+    }
+
+    public static BufferedImage create(Path path) throws Exception {
+        return create((Object) path);
+    }
+
+    /**
+     * Create a buffered image from an input stream without using the ImageIO file
+     * cache - the input stream is not closed.
+     */
+    public static BufferedImage create(InputStream inputStream) throws Exception {
+        return create((Object) inputStream);
+    }
+
+    public static BufferedImage create(byte[] bytes) throws Exception {
+        return create((Object) bytes);
+    }
+
+    /**
+     * Create a buffered image from the remaining bytes of a heap or direct byte buffer.
+     */
+    public static BufferedImage create(ByteBuffer byteBuffer) throws Exception {
+        return create((Object) byteBuffer);
+    }
+
+    /**
+     * Create the buffered image of the given page, e.g. of a multi-page TIFF.
+     *
+     * @param source     the image source
+     * @param imageIndex the index of the page
+     * @return the buffered image or null if no image reader was found
+     */
+    public static BufferedImage create(Object source, int imageIndex) throws Exception {
+
+        ImageInputStream imageInputStream = createImageInputStream(source);
+
+        try {
+            ImageReader imageReader = getImageReader(imageInputStream);
+
+            if (imageReader == null) {
+                return null;
+            }
+
+            MemoryAdmissionController.Reservation reservation = null;
+
+            try {
+                imageReader.setInput(imageInputStream, false, true);
+                reservation = reserve(createImageInfo(imageReader, imageIndex), 1, null);
+                return imageReader.read(imageIndex, imageReader.getDefaultReadParam());
+            } finally {
+                release(reservation);
+                ImageCodecPool.getInstance().returnReader(imageReader);
+            }
+        } finally {
+            imageInputStream.close();
+        }
+    }
+
+    /**
+     * Create a buffered image but check the image header against the given limits
+     * before any raster is allocated.
+     *
+     * @param source the image source
+     * @param limits the pixel/byte budget
+     * @return the buffered image or null if no image reader was found
+     * @throws ImageLimitExceededException the image does not fit into the budget
+     */
+    public static BufferedImage create(Object source, ImageLimits limits) throws Exception {
+        return create(source, limits, null);
+    }
+
+    /**
+     * Create a buffered image within a job which reserved the memory of the decoded
+     * image already, e.g. <code>ThumbnailSet</code> - see {@link #create(Object, ImageLimits)}.
+     *
+     * @param source      the image source
+     * @param limits      the pixel/byte budget
+     * @param reservation the reservation of the job or null to reserve the memory for decoding
+     * @return the buffered image or null if no image reader was found
+     * @throws ImageLimitExceededException the image does not fit into the budget
+     */
+    public static BufferedImage create(Object source, ImageLimits limits, MemoryAdmissionController.Reservation reservation) throws Exception {
+
+        ImageInputStream imageInputStream = createImageInputStream(source);
+
+        try {
+            ImageReader imageReader = getImageReader(imageInputStream);
+
+            if (imageReader == null) {
+                return null;
+            }
+
+            MemoryAdmissionController.Reservation decodingReservation = null;
+
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                ImageInfo imageInfo = createImageInfo(imageReader, 0);
+                limits.check(imageInfo);
+                decodingReservation = reserve(imageInfo, 1, reservation);
+                return imageReader.read(0, imageReader.getDefaultReadParam());
+            } finally {
+                release(decodingReservation);
+                ImageCodecPool.getInstance().returnReader(imageReader);
+            }
+        } finally {
+            imageInputStream.close();
+        }
+    }
+
+    /**
+     * Create a buffered image fitting into the given boundary. The image is decoded
+     * using the largest source subsampling which still exceeds the boundary and
+     * afterwards resampled to its final size - this avoids decoding a 24 MP camera
+     * image at full resolution to create a small preview.
+     *
+     * @param source   the image source
+     * @param boundary the bounding box of the resulting image
+     * @return the buffered image or null if no image reader was found
+     */
+    public static BufferedImage create(Object source, Dimension boundary) throws Exception {
+        return create(source, boundary, ImageLimits.UNLIMITED);
+    }
+
+    /**
+     * Create a buffered image fitting into the given boundary while the subsampled
+     * image has to fit into the given limits.
+     *
+     * @param source   the image source
+     * @param boundary the bounding box of the resulting image
+     * @param limits   the pixel/byte budget of the subsampled image
+     * @return the buffered image or null if no image reader was found
+     * @throws ImageLimitExceededException the subsampled image does not fit into the budget
+     */
+    public static BufferedImage create(Object source, Dimension boundary, ImageLimits limits) throws Exception {
+        return create(source, boundary, limits, null);
+    }
 
-        BufferedImage result;
+    /**
+     * Create a buffered image fitting into the given boundary within a job which reserved
+     * the memory of the subsampled and the resampled image already, e.g. <code>ThumbnailSet</code>
+     * - see {@link #create(Object, Dimension, ImageLimits)}.
+     *
+     * @param source      the image source
+     * @param boundary    the bounding box of the resulting image
+     * @param limits      the pixel/byte budget of the subsampled image
+     * @param reservation the reservation of the job or null to reserve the memory for decoding
+     * @return the buffered image or null if no image reader was found
+     * @throws ImageLimitExceededException the subsampled image does not fit into the budget
+     */
+    public static BufferedImage create(Object source, Dimension boundary, ImageLimits limits, MemoryAdmissionController.Reservation reservation) throws Exception {
+
+        ImageInputStream imageInputStream = createImageInputStream(source);
+
+        try {
+            ImageReader imageReader = getImageReader(imageInputStream);
+
+            if (imageReader == null) {
+                return null;
+            }
+
+            MemoryAdmissionController.Reservation decodingReservation = null;
+
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+
+                ImageInfo imageInfo = createImageInfo(imageReader, 0);
+                Dimension imageDimension = new Dimension(imageInfo.getWidth(), imageInfo.getHeight());
+                Dimension scaledDimension = BufferedImageUtils.getScaledDimension(imageDimension, boundary);
+                int subsampling = getSubsampling(imageDimension, scaledDimension);
+                ImageInfo subsampledImageInfo = getSubsampledImageInfo(imageInfo, boundary);
+
+                limits.check(subsampledImageInfo);
+                // the subsampled image and the resampled one
+                decodingReservation = reserve(subsampledImageInfo, 2, reservation);
+
+                ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+                imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage bufferedImage = imageReader.read(0, imageReadParam);
+
+                return BufferedImageOperations.resample(
+                        bufferedImage,
+                        Math.max(1, scaledDimension.width),
+                        Math.max(1, scaledDimension.height));
+            } finally {
+                release(decodingReservation);
+                ImageCodecPool.getInstance().returnReader(imageReader);
+            }
+        } finally {
+            imageInputStream.close();
+        }
+    }
+
+    /**
+     * Get the image info of the image decoded with the source subsampling used for
+     * the boundary - see {@link #getSubsampling(Dimension, Dimension)}.
+     */
+    public static ImageInfo getSubsampledImageInfo(ImageInfo imageInfo, Dimension boundary) {
+
+        Dimension imageDimension = new Dimension(imageInfo.getWidth(), imageInfo.getHeight());
+        Dimension scaledDimension = BufferedImageUtils.getScaledDimension(imageDimension, boundary);
+        int subsampling = getSubsampling(imageDimension, scaledDimension);
+
+        return new ImageInfo(
+                imageInfo.getFormatName(),
+                (imageInfo.getWidth() + subsampling - 1) / subsampling,
+                (imageInfo.getHeight() + subsampling - 1) / subsampling,
+                imageInfo.getNumBands(),
+                imageInfo.getBitsPerSample());
+    }
+
+    /**
+     * Get the largest integer subsampling factor where the subsampled image is
+     * still at least as large as the scaled dimension.
+     *
+     * @param imageDimension  the dimension of the source image
+     * @param scaledDimension the dimension of the resulting image
+     * @return the subsampling factor, "1" means no subsampling
+     */
+    public static int getSubsampling(Dimension imageDimension, Dimension scaledDimension) {
+
+        int result = 1;
+        int width = Math.max(1, scaledDimension.width);
+        int height = Math.max(1, scaledDimension.height);
+
+        while ((imageDimension.width + result) / (result + 1) >= width
+                && (imageDimension.height + result) / (result + 1) >= height) {
+            result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Read width, height, bands and bit depth of the first image from the image
+     * header without decoding any pixels.
+     *
+     * @param source the image source
+     * @return the image info
+     */
+    public static ImageInfo probe(Object source) throws Exception {
+
+        ImageInputStream imageInputStream = createImageInputStream(source);
+
+        try {
+            ImageReader imageReader = getImageReader(imageInputStream);
+
+            if (imageReader == null) {
+                throw new IIOException("No image reader found for : " + source);
+            }
+
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                return createImageInfo(imageReader, 0);
+            } finally {
+                ImageCodecPool.getInstance().returnReader(imageReader);
+            }
+        } finally {
+            imageInputStream.close();
+        }
+    }
+
+    /**
+     * Write the buffered image using a pooled image writer - this works like
+     * <code>ImageIO.write()</code>.
+     *
+     * @return false if no image writer can encode the image
+     */
+    public static boolean writeBufferedImage(BufferedImage bufferedImage, String formatName, File file) throws Exception {
+        System.out.println("Saving " + file.getPath());
+
+        ImageWriter imageWriter = ImageCodecPool.getInstance().borrowWriter(formatName);
+
+        if (imageWriter == null || !imageWriter.getOriginatingProvider().canEncodeImage(bufferedImage)) {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            return false;
+        }
+
+        // the ImageOutputStream does not truncate existing files
+        if (file.exists() && !file.delete()) {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            throw new IIOException("Can't delete existing file : " + file.getPath());
+        }
+
+        ImageOutputStream imageOutputStream = new FileImageOutputStream(file);
+
+        try {
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(bufferedImage, null, null), imageWriter.getDefaultWriteParam());
+            return true;
+        } finally {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            imageOutputStream.close();
+        }
+    }
+
+    /**
+     * Write the buffered image to the output stream using a pooled image writer - the
+     * output stream is not closed.
+     *
+     * @return false if no image writer can encode the image
+     */
+    public static boolean writeBufferedImage(BufferedImage bufferedImage, String formatName, OutputStream outputStream) throws Exception {
+
+        ImageWriter imageWriter = ImageCodecPool.getInstance().borrowWriter(formatName);
+
+        if (imageWriter == null || !imageWriter.getOriginatingProvider().canEncodeImage(bufferedImage)) {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            return false;
+        }
+
+        ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream);
+
+        try {
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(bufferedImage, null, null), imageWriter.getDefaultWriteParam());
+            return true;
+        } finally {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            imageOutputStream.close();
+        }
+    }
+
+    /**
+     * Create an image input stream for the supported sources. In-memory sources
+     * and input streams never use the ImageIO file cache.
+     */
+    public static ImageInputStream createImageInputStream(Object source) throws Exception {
 
         if (source instanceof File) {
-            File sourceFile = (File) source;
-            result = ImageIO.read(sourceFile);
+            return createImageInputStream((File) source);
         } else if (source instanceof String) {
-            File sourceFile = new File(source.toString());
-            result = ImageIO.read(sourceFile);
+            return createImageInputStream(new File(source.toString()));
+        } else if (source instanceof MappedImageSource) {
+            return ((MappedImageSource) source).createImageInputStream();
+        } else if (source instanceof Path) {
+            return createImageInputStream(((Path) source).toFile());
+        } else if (source instanceof byte[]) {
+            return new ByteBufferImageInputStream((byte[]) source);
+        } else if (source instanceof ByteBuffer) {
+            return new ByteBufferImageInputStream((ByteBuffer) source);
+        } else if (source instanceof InputStream) {
+            return new MemoryCacheImageInputStream((InputStream) source);
         } else {
             throw new IllegalArgumentException("Don't know how to handle : " + source.getClass().getName());
         }
+    }
 
-        return result;
+    private static ImageInputStream createImageInputStream(File sourceFile) throws Exception {
+
+        if (!sourceFile.canRead()) {
+            throw new IIOException("Can't read input file : " + sourceFile.getPath());
+        }
+
+        long length = sourceFile.length();
+
+        if (length >= mappingThreshold && length <= Integer.MAX_VALUE) {
+            return MappedImageSource.of(sourceFile).createImageInputStream();
+        }
+
+        return new FileImageInputStream(sourceFile);
     }
 
-    public static boolean writeBufferedImage(BufferedImage bufferedImage, String formatName, File file) throws Exception {
-        System.out.println("Saving " + file.getPath());
-        return ImageIO.write(bufferedImage, formatName, file);
+    /**
+     * Borrow a pooled image reader - the caller has to return it to the pool.
+     */
+    private static ImageReader getImageReader(ImageInputStream imageInputStream) throws Exception {
+        return ImageCodecPool.getInstance().borrowReader(imageInputStream);
+    }
+
+    /**
+     * Reserve the raster memory of the image unless the job reserved it already.
+     *
+     * @param reservation the reservation of the job or null
+     * @return the reservation or null without admission control or within a job
+     */
+    private static MemoryAdmissionController.Reservation reserve(ImageInfo imageInfo, int copies, MemoryAdmissionController.Reservation reservation) throws Exception {
+        MemoryAdmissionController controller = memoryAdmissionController;
+        return controller != null && reservation == null ? controller.reserve(imageInfo, copies) : null;
+    }
+
+    private static void release(MemoryAdmissionController.Reservation reservation) {
+        if (reservation != null) {
+            reservation.close();
+        }
+    }
+
+    private static ImageInfo createImageInfo(ImageReader imageReader, int imageIndex) throws Exception {
+
+        int width = imageReader.getWidth(imageIndex);
+        int height = imageReader.getHeight(imageIndex);
+        // without an image type assume 4 bytes per pixel instead of an empty raster
+        int numBands = 4;
+        int bitsPerSample = 8;
+
+        ImageTypeSpecifier imageTypeSpecifier = imageReader.getRawImageType(imageIndex);
+
+        if (imageTypeSpecifier == null) {
+            Iterator<ImageTypeSpecifier> imageTypes = imageReader.getImageTypes(imageIndex);
+            imageTypeSpecifier = imageTypes.hasNext() ? imageTypes.next() : null;
+        }
+
+        if (imageTypeSpecifier != null) {
+            SampleModel sampleModel = imageTypeSpecifier.getSampleModel();
+            numBands = sampleModel.getNumBands();
+            bitsPerSample = 0;
+            for (int sampleSize : sampleModel.getSampleSize()) {
+                bitsPerSample = Math.max(bitsPerSample, sampleSize);
+            }
+        }
+
+        return new ImageInfo(imageReader.getFormatName(), width, height, numBands, bitsPerSample);
     }
 }
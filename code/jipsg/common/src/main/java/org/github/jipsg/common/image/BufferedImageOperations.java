@@ -17,10 +17,17 @@
 package org.github.jipsg.common.image;
 
 import org.github.jipsg.common.image.ops.AlphaChannelImageOp;
+import org.github.jipsg.common.image.ops.FusedPointOp;
+import org.github.jipsg.common.image.ops.PointOp;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Contains ready-to use image operations without additional dependencies.
@@ -39,23 +46,132 @@ public class BufferedImageOperations {
         }
     }
 
+    /**
+     * Apply the image operations in the given order. Consecutive {@link PointOp}s are
+     * fused into a single pass over the raster when the image is one of the plain
+     * RGB types (where the ARGB mapping equals the raster mapping), otherwise the
+     * operations are applied one after another.
+     * <p>
+     * Point operations write into images borrowed from the {@link RasterPool} and
+     * intermediate images are returned to the pool as soon as the next operation
+     * has consumed them.
+     */
     public static BufferedImage apply(BufferedImage source, Collection<BufferedImageOp> bufferedImageOps) {
-        BufferedImage result = source;
+        OpChain opChain = new OpChain(source);
+        List<PointOp> pointOps = new ArrayList<PointOp>();
 
         for (BufferedImageOp bufferedImageOp : bufferedImageOps) {
-            result = bufferedImageOp.filter(result, null);
+            if (bufferedImageOp instanceof PointOp) {
+                pointOps.add((PointOp) bufferedImageOp);
+            } else {
+                opChain.filter(pointOps);
+                opChain.filter(bufferedImageOp);
+            }
         }
 
-        return result;
+        opChain.filter(pointOps);
+        return opChain.result;
     }
 
     public static BufferedImage apply(BufferedImage source, BufferedImageOp... bufferedImageOps) {
-        BufferedImage result = source;
+        return apply(source, Arrays.asList(bufferedImageOps));
+    }
 
-        for (BufferedImageOp bufferedImageOp : bufferedImageOps) {
-            result = bufferedImageOp.filter(result, null);
+    private static boolean isPlainRGB(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Keeps track of the intermediate images of {@link #apply(BufferedImage, Collection)}.
+     */
+    private static class OpChain {
+
+        private final RasterPool rasterPool = RasterPool.getInstance();
+        private BufferedImage result;
+        // the current result if it was borrowed from the pool
+        private BufferedImage borrowed;
+
+        OpChain(BufferedImage source) {
+            this.result = source;
+        }
+
+        void filter(List<PointOp> pointOps) {
+            if (pointOps.size() > 1 && isPlainRGB(result)) {
+                filter(new FusedPointOp(pointOps));
+            } else {
+                for (PointOp pointOp : pointOps) {
+                    filter(pointOp);
+                }
+            }
+            pointOps.clear();
+        }
+
+        void filter(PointOp pointOp) {
+            if (!isPlainRGB(result)) {
+                update(pointOp.filter(result, null), false);
+                return;
+            }
+
+            int imageType = pointOp.discardsAlpha() ? BufferedImage.TYPE_INT_RGB : result.getType();
+            BufferedImage dest = rasterPool.borrowImage(result.getWidth(), result.getHeight(), imageType);
+            BufferedImage filtered = pointOp.filter(result, dest);
+
+            if (filtered != dest) {
+                rasterPool.returnImage(dest);
+            }
+
+            update(filtered, filtered == dest);
+        }
+
+        void filter(BufferedImageOp bufferedImageOp) {
+            update(bufferedImageOp.filter(result, null), false);
+        }
+
+        private void update(BufferedImage next, boolean isBorrowed) {
+            if (next == borrowed) {
+                return;
+            }
+
+            // the previous result might still be referenced, e.g. by a sub-image
+            if (borrowed != null && next.getRaster().getDataBuffer() != borrowed.getRaster().getDataBuffer()) {
+                rasterPool.returnImage(borrowed);
+            }
+
+            result = next;
+            borrowed = isBorrowed ? next : null;
+        }
+    }
+
+    /**
+     * Resample the image to the exact width and height using bicubic interpolation.
+     */
+    public static BufferedImage resample(BufferedImage source, int width, int height) {
+
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+
+        int imageType = source.getType();
+
+        if (imageType == BufferedImage.TYPE_CUSTOM || imageType == BufferedImage.TYPE_BYTE_BINARY || imageType == BufferedImage.TYPE_BYTE_INDEXED) {
+            imageType = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
         }
 
+        BufferedImage result = new BufferedImage(width, height, imageType);
+        Graphics2D graphics = result.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.drawImage(source, 0, 0, width, height, null);
+        graphics.dispose();
         return result;
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+/**
+ * The contributions of the source pixels to every target pixel along one axis,
+ * stored as flat primitive arrays: target pixel <code>i</code> is the weighted sum
+ * of the source pixels <code>starts[i] .. starts[i] + counts[i] - 1</code> using the
+ * normalized weights <code>weights[i * stride ..]</code>.
+ */
+class FilterWeights {
+
+    final int[] starts;
+    final int[] counts;
+    final float[] weights;
+    final int stride;
+
+    private FilterWeights(int[] starts, int[] counts, float[] weights, int stride) {
+        this.starts = starts;
+        this.counts = counts;
+        this.weights = weights;
+        this.stride = stride;
+    }
+
+    /**
+     * Compute the weights for scaling <code>sourceSize</code> pixels to <code>targetSize</code>
+     * pixels. When reducing the filter is stretched by the scale factor so that every
+     * source pixel contributes (no aliasing). Weights are renormalized at the borders.
+     */
+    static FilterWeights create(int sourceSize, int targetSize, ResampleFilter filter) {
+
+        double scale = (double) sourceSize / targetSize;
+        double filterScale = Math.max(1.0, scale);
+        double support = filter.getSupport() * filterScale;
+        int stride = (int) Math.ceil(2.0 * support) + 1;
+
+        int[] starts = new int[targetSize];
+        int[] counts = new int[targetSize];
+        float[] weights = new float[targetSize * stride];
+        double[] values = new double[stride];
+
+        for (int i = 0; i < targetSize; i++) {
+
+            double center = (i + 0.5) * scale;
+            int start = Math.max(0, (int) Math.floor(center - support));
+            int end = Math.min(sourceSize, Math.min(start + stride, (int) Math.ceil(center + support)));
+            double sum = 0.0;
+
+            for (int j = start; j < end; j++) {
+                values[j - start] = filter.apply((j + 0.5 - center) / filterScale);
+                sum += values[j - start];
+            }
+
+            if (sum == 0.0) {
+                // the filter does not cover any pixel center - use the nearest pixel
+                start = Math.min(sourceSize - 1, (int) center);
+                end = start + 1;
+                values[0] = 1.0;
+                sum = 1.0;
+            }
+
+            starts[i] = start;
+            counts[i] = end - start;
+
+            for (int j = 0; j < end - start; j++) {
+                weights[i * stride + j] = (float) (values[j] / sum);
+            }
+        }
+
+        return new FilterWeights(starts, counts, weights, stride);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of the filter weights used by the {@link Resampler}. The same
+ * geometries come up over and over again, e.g. camera resolutions scaled to a fixed
+ * set of preview sizes, so repeated scales skip the weight computation entirely.
+ */
+public class FilterWeightsCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final Map<Key, FilterWeights> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries the maximum number of cached weight tables
+     */
+    public FilterWeightsCache(final int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of entries : " + maxEntries);
+        }
+        this.entries = new LinkedHashMap<Key, FilterWeights>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FilterWeights> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the cached weights or compute and cache them - the weights are computed
+     * outside of the lock so concurrent misses may compute them twice.
+     */
+    FilterWeights get(int sourceSize, int targetSize, ResampleFilter filter) {
+
+        Key key = new Key(sourceSize, targetSize, filter);
+        FilterWeights result;
+
+        synchronized (entries) {
+            result = entries.get(key);
+        }
+
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        misses.incrementAndGet();
+        result = FilterWeights.create(sourceSize, targetSize, filter);
+
+        synchronized (entries) {
+            entries.put(key, result);
+        }
+
+        return result;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * The share of lookups served from the cache.
+     */
+    public double getHitRate() {
+        long total = getHits() + getMisses();
+        return total > 0 ? (double) getHits() / total : 0.0;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FilterWeightsCache{" +
+                "size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+
+    private static class Key {
+
+        private final int sourceSize;
+        private final int targetSize;
+        private final ResampleFilter filter;
+
+        Key(int sourceSize, int targetSize, ResampleFilter filter) {
+            this.sourceSize = sourceSize;
+            this.targetSize = targetSize;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return sourceSize == key.sourceSize && targetSize == key.targetSize && filter == key.filter;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * sourceSize + targetSize) + filter.hashCode();
+        }
+    }
+}
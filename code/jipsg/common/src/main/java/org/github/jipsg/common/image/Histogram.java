@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * The histograms of the red, green, blue, alpha and luminance channel of an image
+ * computed in a single pass. The rows are split into bands counted in parallel
+ * into their own bins which are merged at the end, optionally sampling only every
+ * n-th pixel.
+ * <p>
+ * The luminance is <code>0.299 * r + 0.587 * g + 0.114 * b</code> (ITU-R BT.601)
+ * rounded to the nearest integer.
+ */
+public class Histogram {
+
+    public static final int BINS = 256;
+
+    public enum Channel {
+        RED, GREEN, BLUE, ALPHA, LUMINANCE
+    }
+
+    private static final double[] LUMINANCE_R = products(0.299);
+    private static final double[] LUMINANCE_G = products(0.587);
+    private static final double[] LUMINANCE_B = products(0.114);
+
+    private final int[][] counts;
+    private final int samples;
+
+    private Histogram(int[][] counts, int samples) {
+        this.counts = counts;
+        this.samples = samples;
+    }
+
+    /**
+     * Compute the histograms of all pixels of the image.
+     */
+    public static Histogram of(BufferedImage image) {
+        return of(image, 1);
+    }
+
+    /**
+     * Compute the histograms of every n-th pixel of the image.
+     *
+     * @param image the image
+     * @param step  the distance between two sampled pixels in scan order
+     */
+    public static Histogram of(final BufferedImage image, final int step) {
+        final PixelAccess pixelAccess = PixelAccess.of(image);
+        final int width = image.getWidth();
+
+        return compute(image.getHeight(), width, step, new RowSource() {
+            public int[] getRow(int y, int[] row) {
+                pixelAccess.getRGB(0, y, width, row, 0);
+                return row;
+            }
+
+            public int getOffset(int y) {
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * Compute the histograms of all ARGB pixels.
+     *
+     * @param argb  the pixels in scan order
+     * @param width the number of pixels of a row
+     */
+    public static Histogram of(int[] argb, int width) {
+        return of(argb, width, 1);
+    }
+
+    /**
+     * Compute the histograms of every n-th ARGB pixel.
+     *
+     * @param argb  the pixels in scan order
+     * @param width the number of pixels of a row
+     * @param step  the distance between two sampled pixels in scan order
+     */
+    public static Histogram of(final int[] argb, final int width, int step) {
+        if (width <= 0 || argb.length % width != 0) {
+            throw new IllegalArgumentException("Invalid row width : " + width);
+        }
+
+        return compute(argb.length / width, width, step, new RowSource() {
+            public int[] getRow(int y, int[] row) {
+                return argb;
+            }
+
+            public int getOffset(int y) {
+                return y * width;
+            }
+        });
+    }
+
+    /**
+     * The number of counted pixels.
+     */
+    public int getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * The number of pixels with the given value.
+     */
+    public int getCount(Channel channel, int value) {
+        return counts[channel.ordinal()][value];
+    }
+
+    /**
+     * A copy of the 256 bins of the channel.
+     */
+    public int[] getCounts(Channel channel) {
+        return counts[channel.ordinal()].clone();
+    }
+
+    /**
+     * The smallest value occurring in the channel or -1 if no pixel was counted.
+     */
+    public int getMin(Channel channel) {
+        int[] bins = counts[channel.ordinal()];
+        for (int value = 0; value < BINS; value++) {
+            if (bins[value] > 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The largest value occurring in the channel or -1 if no pixel was counted.
+     */
+    public int getMax(Channel channel) {
+        int[] bins = counts[channel.ordinal()];
+        for (int value = BINS - 1; value >= 0; value--) {
+            if (bins[value] > 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The most frequent value of the channel - the smallest one if several values
+     * occur equally often.
+     */
+    public int getMode(Channel channel) {
+        int[] bins = counts[channel.ordinal()];
+        int result = 0;
+        for (int value = 1; value < BINS; value++) {
+            if (bins[value] > bins[result]) {
+                result = value;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The number of values occurring as often as the mode.
+     */
+    public int getModeCount(Channel channel) {
+        int[] bins = counts[channel.ordinal()];
+        int maxCount = bins[getMode(channel)];
+        int result = 0;
+        for (int value = 0; value < BINS; value++) {
+            if (bins[value] == maxCount) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The rounded luminance of an ARGB pixel.
+     */
+    public static int getLuminance(int argb) {
+        return (int) (getLuminance((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF) + 0.5);
+    }
+
+    /**
+     * The luminance of the channel values before rounding - <code>0.299 * red + 0.587 * green + 0.114 * blue</code>
+     * using the lookup tables, which yield exactly the doubles of the multiplications.
+     */
+    public static double getLuminance(int red, int green, int blue) {
+        return LUMINANCE_R[red] + LUMINANCE_G[green] + LUMINANCE_B[blue];
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{" +
+                "samples=" + samples +
+                ", red=" + getMin(Channel.RED) + "-" + getMax(Channel.RED) +
+                ", green=" + getMin(Channel.GREEN) + "-" + getMax(Channel.GREEN) +
+                ", blue=" + getMin(Channel.BLUE) + "-" + getMax(Channel.BLUE) +
+                ", luminance=" + getMin(Channel.LUMINANCE) + "-" + getMax(Channel.LUMINANCE) +
+                '}';
+    }
+
+    /**
+     * Provides the pixels of a row either copied into the given buffer or as
+     * part of a larger array starting at the given offset.
+     */
+    private interface RowSource {
+        int[] getRow(int y, int[] row);
+
+        int getOffset(int y);
+    }
+
+    private static Histogram compute(int height, final int width, final int step, final RowSource rowSource) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Invalid sampling step : " + step);
+        }
+
+        final int[][] counts = new int[Channel.values().length][BINS];
+        final int[] samples = new int[1];
+
+        RowBands.process(height, new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                int[] red = new int[BINS];
+                int[] green = new int[BINS];
+                int[] blue = new int[BINS];
+                int[] alpha = new int[BINS];
+                int[] luminance = new int[BINS];
+                int[] buffer = new int[width];
+                int count = 0;
+
+                for (int y = minY; y < maxY; y++) {
+                    int[] row = rowSource.getRow(y, buffer);
+                    int offset = rowSource.getOffset(y);
+                    // continue the sampling grid of the previous rows
+                    long index = (long) y * width;
+                    int x = (int) ((step - index % step) % step);
+
+                    for (; x < width; x += step) {
+                        int argb = row[offset + x];
+                        int r = (argb >> 16) & 0xFF;
+                        int g = (argb >> 8) & 0xFF;
+                        int b = argb & 0xFF;
+                        red[r]++;
+                        green[g]++;
+                        blue[b]++;
+                        alpha[argb >>> 24]++;
+                        luminance[(int) (LUMINANCE_R[r] + LUMINANCE_G[g] + LUMINANCE_B[b] + 0.5)]++;
+                        count++;
+                    }
+                }
+
+                synchronized (counts) {
+                    add(counts[Channel.RED.ordinal()], red);
+                    add(counts[Channel.GREEN.ordinal()], green);
+                    add(counts[Channel.BLUE.ordinal()], blue);
+                    add(counts[Channel.ALPHA.ordinal()], alpha);
+                    add(counts[Channel.LUMINANCE.ordinal()], luminance);
+                    samples[0] += count;
+                }
+            }
+        });
+
+        return new Histogram(counts, samples[0]);
+    }
+
+    private static void add(int[] target, int[] source) {
+        for (int i = 0; i < BINS; i++) {
+            target[i] += source[i];
+        }
+    }
+
+    /**
+     * Get the products of the coefficient and the 256 channel values, e.g. to look up
+     * a color space conversion.
+     */
+    public static double[] products(double coefficient) {
+        double[] result = new double[BINS];
+        for (int v = 0; v < BINS; v++) {
+            result[v] = coefficient * v;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+/**
+ * Image properties taken from the image header without decoding any pixels.
+ */
+public class ImageInfo {
+
+    private final String formatName;
+    private final int width;
+    private final int height;
+    private final int numBands;
+    private final int bitsPerSample;
+
+    public ImageInfo(String formatName, int width, int height, int numBands, int bitsPerSample) {
+        this.formatName = formatName;
+        this.width = width;
+        this.height = height;
+        this.numBands = numBands;
+        this.bitsPerSample = bitsPerSample;
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumBands() {
+        return numBands;
+    }
+
+    public int getBitsPerSample() {
+        return bitsPerSample;
+    }
+
+    public long getPixelCount() {
+        return (long) width * height;
+    }
+
+    /**
+     * Estimate the size of the decoded raster assuming at least one byte per sample.
+     */
+    public long getRasterBytes() {
+        return getPixelCount() * numBands * Math.max(1, (bitsPerSample + 7) / 8);
+    }
+
+    @Override
+    public String toString() {
+        return "ImageInfo{" +
+                "formatName=" + formatName +
+                ", width=" + width +
+                ", height=" + height +
+                ", numBands=" + numBands +
+                ", bitsPerSample=" + bitsPerSample +
+                '}';
+    }
+}
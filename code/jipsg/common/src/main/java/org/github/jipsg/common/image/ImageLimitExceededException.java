@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import javax.imageio.IIOException;
+
+/**
+ * Thrown when an image header exceeds the configured {@link ImageLimits}. The
+ * probed {@link ImageInfo} is available to re-route the image, e.g. to a
+ * subsampled decode.
+ */
+public class ImageLimitExceededException extends IIOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ImageInfo imageInfo;
+
+    public ImageLimitExceededException(ImageInfo imageInfo, ImageLimits imageLimits) {
+        super("Image exceeds limits : " + imageInfo + " > " + imageLimits);
+        this.imageInfo = imageInfo;
+    }
+
+    public ImageLimitExceededException(ImageInfo imageInfo, String message) {
+        super(message);
+        this.imageInfo = imageInfo;
+    }
+
+    public ImageInfo getImageInfo() {
+        return imageInfo;
+    }
+}
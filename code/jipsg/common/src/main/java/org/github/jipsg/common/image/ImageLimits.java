@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+/**
+ * Pixel and byte budget an image has to fit into before it is decoded. This
+ * protects against decompression bombs, e.g. a 44 KB PNG expanding to a 1 GB
+ * raster.
+ */
+public class ImageLimits {
+
+    /** No limits at all - same behaviour as plain ImageIO */
+    public static final ImageLimits UNLIMITED = new ImageLimits(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long maxPixels;
+    private final long maxBytes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxPixels maximum number of pixels (width x height)
+     * @param maxBytes  maximum size of the decoded raster in bytes
+     */
+    public ImageLimits(long maxPixels, long maxBytes) {
+        this.maxPixels = maxPixels;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isExceeded(ImageInfo imageInfo) {
+        return imageInfo.getPixelCount() > maxPixels || imageInfo.getRasterBytes() > maxBytes;
+    }
+
+    /**
+     * Reject the image if it does not fit into the budget.
+     *
+     * @param imageInfo the probed image header
+     * @throws ImageLimitExceededException the image is too large
+     */
+    public void check(ImageInfo imageInfo) throws ImageLimitExceededException {
+        if (isExceeded(imageInfo)) {
+            throw new ImageLimitExceededException(imageInfo, this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ImageLimits{" +
+                "maxPixels=" + maxPixels +
+                ", maxBytes=" + maxBytes +
+                '}';
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.Dimension;
+import java.io.Closeable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Global memory budget for decoded rasters shared by all concurrent image jobs.
+ * <p>
+ * A job reserves its estimated peak raster footprint (width x height x bands x bytes
+ * per sample times the number of image copies alive at the same time) before decoding
+ * and releases it once the job is done. Jobs not fitting into the remaining budget
+ * wait in FIFO order, jobs which could never fit are rejected right away.
+ * <p>
+ * <code>BufferedImageFactory</code> reserves the memory of every decoded image from
+ * the shared instance, so do <code>ThumbnailSet</code> and <code>ImageBackendRouter</code>
+ * for the whole decoding and scaling - they pass their reservation to the decoding
+ * which does not reserve the memory a second time.
+ *
+ * <pre>
+ * Reservation reservation = MemoryAdmissionController.getInstance().reserve(file, boundary, 2);
+ * try {
+ *     // decode, scale and encode the image
+ * } finally {
+ *     reservation.close();
+ * }
+ * </pre>
+ */
+public class MemoryAdmissionController {
+
+    /** Share of the maximum heap used by the default instance */
+    public static final double DEFAULT_HEAP_RATIO = 0.5;
+
+    private static final MemoryAdmissionController instance = new MemoryAdmissionController(
+            (long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_RATIO));
+
+    private final long budgetBytes;
+    private final int budgetKiloBytes;
+    private final Semaphore semaphore;
+
+    /**
+     * Constructor.
+     *
+     * @param budgetBytes the memory available for decoded rasters
+     */
+    public MemoryAdmissionController(long budgetBytes) {
+        if (budgetBytes < 1024) {
+            throw new IllegalArgumentException("Invalid memory budget : " + budgetBytes);
+        }
+        this.budgetBytes = budgetBytes;
+        this.budgetKiloBytes = (int) Math.min(Integer.MAX_VALUE, budgetBytes / 1024);
+        this.semaphore = new Semaphore(budgetKiloBytes, true);
+    }
+
+    /**
+     * Get the controller shared by the whole JVM using half of the maximum heap.
+     */
+    public static MemoryAdmissionController getInstance() {
+        return instance;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * The part of the budget not being reserved right now.
+     */
+    public long getAvailableBytes() {
+        return semaphore.availablePermits() * 1024L;
+    }
+
+    /**
+     * Estimate the peak memory of a job.
+     *
+     * @param imageInfo the image header
+     * @param copies    number of image copies alive at the same time, e.g. 2 for
+     *                  decoding followed by a single image operation
+     * @return the estimated number of bytes
+     */
+    public static long estimateBytes(ImageInfo imageInfo, int copies) {
+        if (copies <= 0) {
+            throw new IllegalArgumentException("Invalid number of copies : " + copies);
+        }
+        return imageInfo.getRasterBytes() * copies;
+    }
+
+    /**
+     * Probe the image and reserve the memory for decoding it subsampled to the
+     * boundary - see {@link #reserve(ImageInfo, int)}.
+     *
+     * @param source   the image source
+     * @param boundary the bounding box of the decoded image or null
+     * @param copies   number of image copies alive at the same time
+     */
+    public Reservation reserve(Object source, Dimension boundary, int copies) throws Exception {
+
+        ImageInfo imageInfo = BufferedImageFactory.probe(source);
+
+        if (boundary != null) {
+            imageInfo = BufferedImageFactory.getSubsampledImageInfo(imageInfo, boundary);
+        }
+
+        return reserve(imageInfo, copies);
+    }
+
+    /**
+     * Reserve the estimated memory of the job and wait until it is available.
+     *
+     * @param imageInfo the image header
+     * @param copies    number of image copies alive at the same time
+     * @return the reservation to be closed when the job is done
+     * @throws ImageLimitExceededException the job exceeds the whole budget
+     */
+    public Reservation reserve(ImageInfo imageInfo, int copies) throws ImageLimitExceededException, InterruptedException {
+        int permits = getPermits(imageInfo, copies);
+        semaphore.acquire(permits);
+        return new Reservation(permits);
+    }
+
+    /**
+     * Reserve the estimated memory of the job if it becomes available within the timeout.
+     *
+     * @return the reservation or null if the timeout elapsed
+     * @throws ImageLimitExceededException the job exceeds the whole budget
+     */
+    public Reservation tryReserve(ImageInfo imageInfo, int copies, long timeout, TimeUnit unit) throws ImageLimitExceededException, InterruptedException {
+        int permits = getPermits(imageInfo, copies);
+        return semaphore.tryAcquire(permits, timeout, unit) ? new Reservation(permits) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryAdmissionController{" +
+                "budgetBytes=" + budgetBytes +
+                ", availableBytes=" + getAvailableBytes() +
+                ", queueLength=" + semaphore.getQueueLength() +
+                '}';
+    }
+
+    private int getPermits(ImageInfo imageInfo, int copies) throws ImageLimitExceededException {
+        long bytes = estimateBytes(imageInfo, copies);
+        long kiloBytes = Math.max(1, (bytes + 1023) / 1024);
+
+        if (kiloBytes > budgetKiloBytes) {
+            throw new ImageLimitExceededException(imageInfo, "Image exceeds memory budget : "
+                    + imageInfo + " x " + copies + " > " + budgetBytes + " bytes");
+        }
+
+        return (int) kiloBytes;
+    }
+
+    /**
+     * Reserved memory being released on close - closing it more than once has no effect.
+     * A reservation may be closed by any thread, e.g. the one completing an asynchronous job.
+     */
+    public class Reservation implements Closeable {
+
+        private final int permits;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Reservation(int permits) {
+            this.permits = permits;
+        }
+
+        public long getBytes() {
+            return permits * 1024L;
+        }
+
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                semaphore.release(permits);
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Direct access to the pixels of a BufferedImage bypassing the per-pixel
+ * <code>ColorModel</code> conversion of <code>getRGB()</code>/<code>setRGB()</code>.
+ * <p>
+ * For images backed by a single <code>int[]</code>, <code>byte[]</code> or <code>short[]</code>
+ * array the array is handed out together with the index of the first pixel, the
+ * scanline and pixel stride and the band offsets. Reading and writing ARGB rows
+ * works on the arrays directly for <code>TYPE_INT_RGB</code>, <code>TYPE_INT_ARGB</code>,
+ * <code>TYPE_INT_BGR</code>, <code>TYPE_3BYTE_BGR</code> and <code>TYPE_4BYTE_ABGR</code>
+ * and falls back to the row-wise bulk <code>getRGB()</code>/<code>setRGB()</code> otherwise,
+ * so the results are always identical to the plain BufferedImage methods.
+ * <p>
+ * Please note that grabbing the data array disables the hardware acceleration of
+ * the image when it is drawn later on.
+ */
+public class PixelAccess {
+
+    private final BufferedImage image;
+    private final int width;
+    private final int height;
+    private final int[] intData;
+    private final byte[] byteData;
+    private final short[] shortData;
+    private final int offset;
+    private final int scanlineStride;
+    private final int pixelStride;
+    private final int[] bandOffsets;
+
+    private PixelAccess(BufferedImage image) {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int translateX = -raster.getSampleModelTranslateX();
+        int translateY = -raster.getSampleModelTranslateY();
+
+        if (dataBuffer.getNumBanks() == 1 && dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel packedSampleModel = (SinglePixelPackedSampleModel) sampleModel;
+            this.intData = ((DataBufferInt) dataBuffer).getData();
+            this.byteData = null;
+            this.shortData = null;
+            this.scanlineStride = packedSampleModel.getScanlineStride();
+            this.pixelStride = 1;
+            this.offset = dataBuffer.getOffset() + translateY * scanlineStride + translateX;
+            this.bandOffsets = packedSampleModel.getBitOffsets();
+        } else if (dataBuffer.getNumBanks() == 1 && sampleModel instanceof ComponentSampleModel
+                && (dataBuffer instanceof DataBufferByte || dataBuffer instanceof DataBufferUShort)) {
+            ComponentSampleModel componentSampleModel = (ComponentSampleModel) sampleModel;
+            this.intData = null;
+            this.byteData = dataBuffer instanceof DataBufferByte ? ((DataBufferByte) dataBuffer).getData() : null;
+            this.shortData = dataBuffer instanceof DataBufferUShort ? ((DataBufferUShort) dataBuffer).getData() : null;
+            this.scanlineStride = componentSampleModel.getScanlineStride();
+            this.pixelStride = componentSampleModel.getPixelStride();
+            this.offset = dataBuffer.getOffset() + translateY * scanlineStride + translateX * pixelStride;
+            this.bandOffsets = componentSampleModel.getBandOffsets();
+        } else {
+            this.intData = null;
+            this.byteData = null;
+            this.shortData = null;
+            this.scanlineStride = 0;
+            this.pixelStride = 0;
+            this.offset = 0;
+            this.bandOffsets = null;
+        }
+    }
+
+    public static PixelAccess of(BufferedImage image) {
+        return new PixelAccess(image);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Check if one of the backing arrays is available.
+     */
+    public boolean isDirect() {
+        return intData != null || byteData != null || shortData != null;
+    }
+
+    /**
+     * The backing array of packed int images, e.g. <code>TYPE_INT_RGB</code>, or null.
+     */
+    public int[] getIntData() {
+        return intData;
+    }
+
+    /**
+     * The backing array of interleaved byte images, e.g. <code>TYPE_3BYTE_BGR</code>, or null.
+     */
+    public byte[] getByteData() {
+        return byteData;
+    }
+
+    /**
+     * The backing array of interleaved short images, e.g. <code>TYPE_USHORT_GRAY</code>, or null.
+     */
+    public short[] getShortData() {
+        return shortData;
+    }
+
+    /**
+     * The array index of the first sample of pixel (0, 0).
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * The number of array elements between two rows.
+     */
+    public int getScanlineStride() {
+        return scanlineStride;
+    }
+
+    /**
+     * The number of array elements between two pixels.
+     */
+    public int getPixelStride() {
+        return pixelStride;
+    }
+
+    /**
+     * The position of every band (e.g. red, green, blue, alpha) within a pixel - array
+     * offsets for interleaved images and bit offsets for packed int images.
+     */
+    public int[] getBandOffsets() {
+        return bandOffsets != null ? bandOffsets.clone() : null;
+    }
+
+    /**
+     * Read the default sRGB ARGB values of all pixels - see <code>BufferedImage.getRGB()</code>.
+     */
+    public int[] getRGB(int[] argb) {
+        if (argb == null) {
+            argb = new int[width * height];
+        }
+        for (int y = 0; y < height; y++) {
+            getRGB(0, y, width, argb, y * width);
+        }
+        return argb;
+    }
+
+    /**
+     * Write the default sRGB ARGB values of all pixels - see <code>BufferedImage.setRGB()</code>.
+     */
+    public void setRGB(int[] argb) {
+        for (int y = 0; y < height; y++) {
+            setRGB(0, y, width, argb, y * width);
+        }
+    }
+
+    /**
+     * Read the ARGB values of <code>length</code> pixels of row <code>y</code> starting at <code>x</code>.
+     */
+    public void getRGB(int x, int y, int length, int[] argb, int argbOffset) {
+        int index = offset + y * scanlineStride + x * pixelStride;
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+                if (intData != null) {
+                    System.arraycopy(intData, index, argb, argbOffset, length);
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_INT_RGB:
+                if (intData != null) {
+                    for (int i = 0; i < length; i++) {
+                        argb[argbOffset + i] = 0xFF000000 | intData[index + i];
+                    }
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_INT_BGR:
+                if (intData != null) {
+                    for (int i = 0; i < length; i++) {
+                        int bgr = intData[index + i];
+                        argb[argbOffset + i] = 0xFF000000 | ((bgr & 0xFF) << 16) | (bgr & 0xFF00) | ((bgr >> 16) & 0xFF);
+                    }
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                if (byteData != null) {
+                    for (int i = 0; i < length; i++, index += 3) {
+                        argb[argbOffset + i] = 0xFF000000
+                                | ((byteData[index + 2] & 0xFF) << 16)
+                                | ((byteData[index + 1] & 0xFF) << 8)
+                                | (byteData[index] & 0xFF);
+                    }
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (byteData != null) {
+                    for (int i = 0; i < length; i++, index += 4) {
+                        argb[argbOffset + i] = ((byteData[index] & 0xFF) << 24)
+                                | ((byteData[index + 3] & 0xFF) << 16)
+                                | ((byteData[index + 2] & 0xFF) << 8)
+                                | (byteData[index + 1] & 0xFF);
+                    }
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+
+        image.getRGB(x, y, length, 1, argb, argbOffset, length);
+    }
+
+    /**
+     * Write the ARGB values of <code>length</code> pixels of row <code>y</code> starting at <code>x</code>.
+     */
+    public void setRGB(int x, int y, int length, int[] argb, int argbOffset) {
+        int index = offset + y * scanlineStride + x * pixelStride;
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+                if (intData != null) {
+                    System.arraycopy(argb, argbOffset, intData, index, length);
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_INT_RGB:
+                if (intData != null) {
+                    for (int i = 0; i < length; i++) {
+                        intData[index + i] = argb[argbOffset + i] & 0xFFFFFF;
+                    }
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_INT_BGR:
+                if (intData != null) {
+                    for (int i = 0; i < length; i++) {
+                        int rgb = argb[argbOffset + i];
+                        intData[index + i] = ((rgb & 0xFF) << 16) | (rgb & 0xFF00) | ((rgb >> 16) & 0xFF);
+                    }
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                if (byteData != null) {
+                    for (int i = 0; i < length; i++, index += 3) {
+                        int rgb = argb[argbOffset + i];
+                        byteData[index] = (byte) rgb;
+                        byteData[index + 1] = (byte) (rgb >> 8);
+                        byteData[index + 2] = (byte) (rgb >> 16);
+                    }
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (byteData != null) {
+                    for (int i = 0; i < length; i++, index += 4) {
+                        int value = argb[argbOffset + i];
+                        byteData[index] = (byte) (value >>> 24);
+                        byteData[index + 1] = (byte) value;
+                        byteData[index + 2] = (byte) (value >> 8);
+                        byteData[index + 3] = (byte) (value >> 16);
+                    }
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+
+        image.setRGB(x, y, length, 1, argb, argbOffset, length);
+    }
+}
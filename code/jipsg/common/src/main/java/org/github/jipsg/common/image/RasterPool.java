@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.reflect.Array;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of the pixel arrays backing intermediate images of an image operation
+ * chain. Large arrays are allocated directly in the old generation by G1
+ * ("humongous objects") - recycling them keeps these allocations and the
+ * associated zeroing of memory off the hot path.
+ * <p>
+ * Arrays are grouped into size classes so that images of slightly different
+ * dimensions share arrays - every power of two is followed by three classes in
+ * steps of a quarter, so an array is at most 25% larger than requested. Returned
+ * arrays go into a shared pool bounded by the number of retained bytes, arrays
+ * below the minimum size are not pooled at all.
+ * <p>
+ * Borrowed images are <b>not</b> cleared - they are meant to be used as the
+ * destination of operations overwriting every pixel.
+ */
+public class RasterPool {
+
+    public static final int DEFAULT_MIN_POOLED_BYTES = 256 * 1024;
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    private static final ConcurrentMap<Integer, BufferedImage> prototypes = new ConcurrentHashMap<Integer, BufferedImage>();
+    private static final RasterPool instance = new RasterPool(Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16));
+
+    private final long maxRetainedBytes;
+    private final ConcurrentMap<Long, BlockingQueue<Object>> arrays = new ConcurrentHashMap<Long, BlockingQueue<Object>>();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxRetainedBytes maximum number of bytes kept in the shared pool
+     */
+    public RasterPool(long maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("Invalid maximum number of retained bytes : " + maxRetainedBytes);
+        }
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * Get the pool shared by the whole JVM.
+     */
+    public static RasterPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Check if images of the given type can be backed by pooled arrays.
+     */
+    public static boolean isPoolable(int imageType) {
+        switch (imageType) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Borrow an image with undefined content - unsupported image types and small
+     * images are simply created.
+     *
+     * @param width     the image width
+     * @param height    the image height
+     * @param imageType the image type, e.g. <code>BufferedImage.TYPE_INT_RGB</code>
+     * @return the image
+     */
+    public BufferedImage borrowImage(int width, int height, int imageType) {
+        if (!isPoolable(imageType)) {
+            return new BufferedImage(width, height, imageType);
+        }
+
+        BufferedImage prototype = getPrototype(imageType);
+        SampleModel sampleModel = prototype.getSampleModel().createCompatibleSampleModel(width, height);
+        boolean isIntData = sampleModel.getDataType() == DataBuffer.TYPE_INT;
+        long size = (long) width * height * sampleModel.getNumDataElements();
+        long bytes = isIntData ? size * 4 : size;
+
+        if (size > Integer.MAX_VALUE || bytes < DEFAULT_MIN_POOLED_BYTES) {
+            return new BufferedImage(width, height, imageType);
+        }
+
+        int length = getSizeClass((int) size);
+        Object array = borrowArray(isIntData, length);
+
+        DataBuffer dataBuffer = isIntData
+                ? new DataBufferInt((int[]) array, (int) size)
+                : new DataBufferByte((byte[]) array, (int) size);
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, null);
+        ColorModel colorModel = prototype.getColorModel();
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Return the array backing the image to the pool - the image must not be used
+     * afterwards. Images not backed by an array of a size class are ignored.
+     */
+    public void returnImage(BufferedImage image) {
+        if (image == null || !isPoolable(image.getType())) {
+            return;
+        }
+
+        WritableRaster raster = image.getRaster();
+
+        // never recycle the array of a sub-image which is still used by its parent
+        if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            return;
+        }
+
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        Object array;
+
+        if (dataBuffer instanceof DataBufferInt) {
+            array = ((DataBufferInt) dataBuffer).getData();
+        } else if (dataBuffer instanceof DataBufferByte) {
+            array = ((DataBufferByte) dataBuffer).getData();
+        } else {
+            return;
+        }
+
+        int length = Array.getLength(array);
+
+        if (length == getSizeClass(length) && getBytes(array) >= DEFAULT_MIN_POOLED_BYTES) {
+            returnArray(array);
+        }
+    }
+
+    /**
+     * Number of borrowed arrays taken from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of borrowed arrays which had to be created.
+     */
+    public long getCreations() {
+        return creations.get();
+    }
+
+    /**
+     * Number of returned arrays which were dropped since the pool was full.
+     */
+    public long getDrops() {
+        return drops.get();
+    }
+
+    /**
+     * Number of bytes currently kept in the shared pool.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Remove all arrays from the pool.
+     */
+    public void clear() {
+        for (BlockingQueue<Object> queue : arrays.values()) {
+            Object array;
+            while ((array = queue.poll()) != null) {
+                retainedBytes.addAndGet(-getBytes(array));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RasterPool{" +
+                "maxRetainedBytes=" + maxRetainedBytes +
+                ", retainedBytes=" + getRetainedBytes() +
+                ", hits=" + getHits() +
+                ", creations=" + getCreations() +
+                ", drops=" + getDrops() +
+                '}';
+    }
+
+    private Object borrowArray(boolean isIntData, int length) {
+        Object result = getQueue(getKey(isIntData, length)).poll();
+
+        if (result != null) {
+            retainedBytes.addAndGet(-getBytes(result));
+            hits.incrementAndGet();
+            return result;
+        }
+
+        creations.incrementAndGet();
+        return isIntData ? new int[length] : new byte[length];
+    }
+
+    private void returnArray(Object array) {
+        long bytes = getBytes(array);
+
+        if (retainedBytes.addAndGet(bytes) <= maxRetainedBytes
+                && getQueue(getKey(array instanceof int[], Array.getLength(array))).offer(array)) {
+            return;
+        }
+
+        retainedBytes.addAndGet(-bytes);
+        drops.incrementAndGet();
+    }
+
+    private BlockingQueue<Object> getQueue(Long key) {
+        BlockingQueue<Object> result = arrays.get(key);
+
+        if (result == null) {
+            BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(DEFAULT_MAX_IDLE);
+            result = arrays.putIfAbsent(key, queue);
+            if (result == null) {
+                result = queue;
+            }
+        }
+
+        return result;
+    }
+
+    private static Long getKey(boolean isIntData, int length) {
+        return isIntData ? (long) length : -(long) length;
+    }
+
+    private static long getBytes(Object array) {
+        return array instanceof int[] ? 4L * ((int[]) array).length : ((byte[]) array).length;
+    }
+
+    /**
+     * The smallest size class not less than the given size - the size rounded up
+     * to a quarter of the next lower power of two.
+     */
+    static int getSizeClass(int size) {
+        int step = Math.max(1, Integer.highestOneBit(Math.max(1, size)) / 4);
+        long result = ((long) size + step - 1) / step * step;
+        return result <= Integer.MAX_VALUE ? (int) result : size;
+    }
+
+    /**
+     * Get a one-pixel image providing the color and sample model of the image type.
+     */
+    private static BufferedImage getPrototype(int imageType) {
+        BufferedImage result = prototypes.get(imageType);
+        if (result == null) {
+            result = new BufferedImage(1, 1, imageType);
+            prototypes.putIfAbsent(imageType, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+/**
+ * Reconstruction filters of the {@link Resampler}.
+ */
+public enum ResampleFilter {
+
+    /** Averages the covered pixels - fast but blocky when enlarging */
+    BOX(0.5) {
+        public double apply(double x) {
+            return x > -0.5 && x <= 0.5 ? 1.0 : 0.0;
+        }
+    },
+
+    /** Cubic filter (B=0, C=0.5) being sharper than Mitchell */
+    CATMULL_ROM(2.0) {
+        public double apply(double x) {
+            return cubic(x, 0.0, 0.5);
+        }
+    },
+
+    /** Cubic filter (B=1/3, C=1/3) balancing blurring and ringing */
+    MITCHELL(2.0) {
+        public double apply(double x) {
+            return cubic(x, 1.0 / 3.0, 1.0 / 3.0);
+        }
+    },
+
+    /** Windowed sinc with three lobes - sharpest but may ring at hard edges */
+    LANCZOS3(3.0) {
+        public double apply(double x) {
+            if (x == 0.0) {
+                return 1.0;
+            } else if (x <= -3.0 || x >= 3.0) {
+                return 0.0;
+            }
+            double px = Math.PI * x;
+            return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+        }
+    };
+
+    private final double support;
+
+    ResampleFilter(double support) {
+        this.support = support;
+    }
+
+    /**
+     * The radius of the filter in source pixels when not scaling.
+     */
+    public double getSupport() {
+        return support;
+    }
+
+    /**
+     * The filter weight at the given distance.
+     */
+    public abstract double apply(double x);
+
+    private static double cubic(double x, double b, double c) {
+        double ax = Math.abs(x);
+        if (ax < 1.0) {
+            return ((12 - 9 * b - 6 * c) * ax * ax * ax + (-18 + 12 * b + 6 * c) * ax * ax + (6 - 2 * b)) / 6.0;
+        } else if (ax < 2.0) {
+            return ((-b - 6 * c) * ax * ax * ax + (6 * b + 30 * c) * ax * ax + (-12 * b - 48 * c) * ax + (8 * b + 24 * c)) / 6.0;
+        } else {
+            return 0.0;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * High-quality image scaling without third-party libraries.
+ * <p>
+ * The image is scaled by a horizontal pass over the source rows followed by a
+ * vertical pass over the target rows (separable filtering), both working directly
+ * on the <code>DataBufferInt</code>/<code>DataBufferByte</code> arrays. The target rows
+ * are split into bands running on the common ForkJoin pool, every band filters the
+ * source rows it needs horizontally into a rolling window of filter height, so no
+ * intermediate image of the source height is allocated. Colors are premultiplied with their
+ * alpha while filtering to avoid dark fringes around transparent areas. The filter
+ * weights of a geometry are computed once and kept in a {@link FilterWeightsCache}.
+ * <p>
+ * <code>TYPE_INT_RGB</code>, <code>TYPE_INT_ARGB(_PRE)</code>, <code>TYPE_3BYTE_BGR</code>,
+ * <code>TYPE_4BYTE_ABGR(_PRE)</code> and <code>TYPE_BYTE_GRAY</code> images are processed
+ * in place and keep their type, all other images are converted to <code>TYPE_INT_RGB</code>
+ * or <code>TYPE_INT_ARGB</code> first.
+ */
+public class Resampler {
+
+    private static final FilterWeightsCache sharedFilterWeightsCache = new FilterWeightsCache(FilterWeightsCache.DEFAULT_MAX_ENTRIES);
+
+    private final ResampleFilter filter;
+    private final FilterWeightsCache filterWeightsCache;
+
+    /**
+     * Create a resampler using the filter weights cache shared by the whole JVM.
+     */
+    public Resampler(ResampleFilter filter) {
+        this(filter, sharedFilterWeightsCache);
+    }
+
+    public Resampler(ResampleFilter filter, FilterWeightsCache filterWeightsCache) {
+        this.filter = filter;
+        this.filterWeightsCache = filterWeightsCache;
+    }
+
+    /**
+     * Get the filter weights cache shared by the whole JVM.
+     */
+    public static FilterWeightsCache getSharedFilterWeightsCache() {
+        return sharedFilterWeightsCache;
+    }
+
+    public FilterWeightsCache getFilterWeightsCache() {
+        return filterWeightsCache;
+    }
+
+    public ResampleFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Scale the image to the exact width and height.
+     */
+    public BufferedImage resample(BufferedImage source, int width, int height) {
+
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size : " + width + "x" + height);
+        }
+
+        if (source.getWidth() == width && source.getHeight() == height) {
+            return source;
+        }
+
+        final PixelLayout sourceLayout = new PixelLayout(toSupportedImage(source));
+        final BufferedImage target = new BufferedImage(width, height, sourceLayout.image.getType());
+        final PixelLayout targetLayout = new PixelLayout(target);
+        final int channels = sourceLayout.channels;
+        final int rowLength = width * channels;
+
+        final FilterWeights columnWeights = filterWeightsCache.get(sourceLayout.width, width, filter);
+        final FilterWeights rowWeights = filterWeightsCache.get(sourceLayout.height, height, filter);
+        final int windowRows = rowWeights.stride;
+
+        RowBands.process(height, new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                float[] sourceRow = new float[sourceLayout.width * channels];
+                float[] row = new float[rowLength];
+                // the horizontally filtered source row y is kept in slot y % windowRows
+                float[] window = new float[windowRows * rowLength];
+                int[] windowSourceRows = new int[windowRows];
+                Arrays.fill(windowSourceRows, -1);
+                for (int y = minY; y < maxY; y++) {
+                    int start = rowWeights.starts[y];
+                    for (int sourceY = start; sourceY < start + rowWeights.counts[y]; sourceY++) {
+                        int slot = sourceY % windowRows;
+                        if (windowSourceRows[slot] != sourceY) {
+                            sourceLayout.readRow(sourceY, sourceRow);
+                            filterRow(sourceRow, columnWeights, channels, window, slot * rowLength);
+                            windowSourceRows[slot] = sourceY;
+                        }
+                    }
+                    filterColumns(window, windowRows, rowWeights, y, rowLength, row);
+                    targetLayout.writeRow(y, row);
+                }
+            }
+        });
+
+        return target;
+    }
+
+    private static void filterRow(float[] row, FilterWeights weights, int channels, float[] target, int offset) {
+        int targetWidth = weights.starts.length;
+        for (int x = 0; x < targetWidth; x++) {
+            int start = weights.starts[x] * channels;
+            int count = weights.counts[x];
+            int weightOffset = x * weights.stride;
+            for (int c = 0; c < channels; c++) {
+                float sum = 0f;
+                for (int i = 0, index = start + c; i < count; i++, index += channels) {
+                    sum += weights.weights[weightOffset + i] * row[index];
+                }
+                target[offset++] = sum;
+            }
+        }
+    }
+
+    private static void filterColumns(float[] window, int windowRows, FilterWeights weights, int y, int rowLength, float[] row) {
+        int start = weights.starts[y];
+        int count = weights.counts[y];
+        int weightOffset = y * weights.stride;
+        Arrays.fill(row, 0f);
+        for (int i = 0; i < count; i++) {
+            float weight = weights.weights[weightOffset + i];
+            int offset = ((start + i) % windowRows) * rowLength;
+            for (int x = 0; x < rowLength; x++) {
+                row[x] += weight * window[offset + x];
+            }
+        }
+    }
+
+    /**
+     * Return the image if its data buffer can be accessed directly, otherwise copy it
+     * into an image of a supported type.
+     */
+    private static BufferedImage toSupportedImage(BufferedImage source) {
+
+        int imageType = source.getType();
+
+        if (isSupportedType(imageType)) {
+            if (PixelLayout.isPlain(source)) {
+                return source;
+            }
+        } else {
+            imageType = source.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        }
+
+        BufferedImage result = new BufferedImage(source.getWidth(), source.getHeight(), imageType);
+
+        if (result.getType() == source.getType()) {
+            source.copyData(result.getRaster());
+        } else {
+            Graphics2D graphics = result.createGraphics();
+            graphics.drawImage(source, 0, 0, null);
+            graphics.dispose();
+        }
+
+        return result;
+    }
+
+    private static boolean isSupportedType(int imageType) {
+        switch (imageType) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Unpacks and packs rows of a supported image into float samples - the alpha
+     * sample always comes first.
+     */
+    private static class PixelLayout {
+
+        final BufferedImage image;
+        final int width;
+        final int height;
+        final int channels;
+        final boolean hasAlpha;
+        final boolean premultiply;
+        final int[] intData;
+        final byte[] byteData;
+
+        PixelLayout(BufferedImage image) {
+            this.image = image;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.hasAlpha = image.getColorModel().hasAlpha();
+            this.premultiply = hasAlpha && !image.isAlphaPremultiplied();
+            this.channels = image.getRaster().getNumBands();
+
+            if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+                this.intData = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                this.byteData = null;
+            } else {
+                this.intData = null;
+                this.byteData = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            }
+        }
+
+        /**
+         * Check that the pixels start at index 0 of the data buffer without any
+         * padding - which is not the case for sub-images.
+         */
+        static boolean isPlain(BufferedImage image) {
+            WritableRaster raster = image.getRaster();
+            SampleModel sampleModel = raster.getSampleModel();
+
+            if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                    || raster.getDataBuffer().getNumBanks() != 1 || raster.getDataBuffer().getOffset() != 0) {
+                return false;
+            } else if (sampleModel instanceof SinglePixelPackedSampleModel) {
+                return ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride() == image.getWidth();
+            } else if (sampleModel instanceof ComponentSampleModel) {
+                ComponentSampleModel componentSampleModel = (ComponentSampleModel) sampleModel;
+                int pixelStride = componentSampleModel.getPixelStride();
+                int[] bandOffsets = componentSampleModel.getBandOffsets();
+                for (int i = 0; i < bandOffsets.length; i++) {
+                    if (bandOffsets[i] != bandOffsets.length - 1 - i && bandOffsets.length != 1) {
+                        return false;
+                    }
+                }
+                return pixelStride == raster.getNumBands() && componentSampleModel.getScanlineStride() == image.getWidth() * pixelStride;
+            } else {
+                return false;
+            }
+        }
+
+        void readRow(int y, float[] row) {
+            if (intData != null) {
+                for (int x = 0, index = y * width, i = 0; x < width; x++, index++) {
+                    int argb = intData[index];
+                    float a = argb >>> 24;
+                    float factor = premultiply ? a / 255f : 1f;
+                    if (hasAlpha) {
+                        row[i++] = a;
+                    }
+                    row[i++] = ((argb >> 16) & 0xFF) * factor;
+                    row[i++] = ((argb >> 8) & 0xFF) * factor;
+                    row[i++] = (argb & 0xFF) * factor;
+                }
+            } else {
+                int length = width * channels;
+                int offset = y * length;
+                if (premultiply) {
+                    for (int i = 0; i < length; i += channels) {
+                        float a = byteData[offset + i] & 0xFF;
+                        float factor = a / 255f;
+                        row[i] = a;
+                        for (int c = 1; c < channels; c++) {
+                            row[i + c] = (byteData[offset + i + c] & 0xFF) * factor;
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        row[i] = byteData[offset + i] & 0xFF;
+                    }
+                }
+            }
+        }
+
+        void writeRow(int y, float[] row) {
+            if (intData != null) {
+                for (int x = 0, index = y * width, i = 0; x < width; x++, index++) {
+                    int a = hasAlpha ? clamp(row[i++]) : 255;
+                    float factor = premultiply && a > 0 ? 255f / a : 1f;
+                    int r = clamp(row[i++] * factor);
+                    int g = clamp(row[i++] * factor);
+                    int b = clamp(row[i++] * factor);
+                    if (premultiply && a == 0) {
+                        r = g = b = 0;
+                    } else if (hasAlpha && !premultiply) {
+                        // keep premultiplied colors valid after ringing
+                        r = Math.min(r, a);
+                        g = Math.min(g, a);
+                        b = Math.min(b, a);
+                    }
+                    intData[index] = (a << 24) | (r << 16) | (g << 8) | b;
+                }
+            } else {
+                int length = width * channels;
+                int offset = y * length;
+                if (hasAlpha) {
+                    for (int i = 0; i < length; i += channels) {
+                        int a = clamp(row[i]);
+                        float factor = premultiply && a > 0 ? 255f / a : 1f;
+                        byteData[offset + i] = (byte) a;
+                        for (int c = 1; c < channels; c++) {
+                            int value = a == 0 ? 0 : clamp(row[i + c] * factor);
+                            byteData[offset + i + c] = (byte) (premultiply ? value : Math.min(value, a));
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        byteData[offset + i] = (byte) clamp(row[i]);
+                    }
+                }
+            }
+        }
+
+        private static int clamp(float value) {
+            int result = (int) (value + 0.5f);
+            return result < 0 ? 0 : (result > 255 ? 255 : result);
+        }
+    }
+}
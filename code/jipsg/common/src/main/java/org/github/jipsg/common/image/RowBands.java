@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the rows of an image into horizontal bands processed in parallel on the
+ * common ForkJoin pool. Small images are processed on the calling thread.
+ */
+public class RowBands {
+
+    /** Bands are not split below this number of rows */
+    public static final int DEFAULT_MIN_BAND_HEIGHT = 16;
+
+    /**
+     * Processes the rows <code>[minY, maxY)</code> of a band.
+     */
+    public interface Task {
+        void process(int minY, int maxY);
+    }
+
+    /**
+     * Process the rows <code>[0, rows)</code> in parallel bands.
+     */
+    public static void process(int rows, Task task) {
+        process(rows, DEFAULT_MIN_BAND_HEIGHT, task);
+    }
+
+    /**
+     * Process the rows <code>[0, rows)</code> in parallel bands.
+     *
+     * @param rows          the number of rows
+     * @param minBandHeight the minimum number of rows of a band
+     * @param task          the task being invoked for every band
+     */
+    public static void process(int rows, int minBandHeight, Task task) {
+        process(rows, minBandHeight, task, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Process the rows <code>[0, rows)</code> in parallel bands on the given pool.
+     *
+     * @param rows          the number of rows
+     * @param minBandHeight the minimum number of rows of a band
+     * @param task          the task being invoked for every band
+     * @param forkJoinPool  the pool running the bands
+     */
+    public static void process(int rows, int minBandHeight, Task task, ForkJoinPool forkJoinPool) {
+
+        int parallelism = forkJoinPool.getParallelism();
+
+        // a few bands per thread to balance uneven work
+        int bandHeight = Math.max(Math.max(1, minBandHeight), (rows + 4 * parallelism - 1) / (4 * parallelism));
+
+        if (rows <= bandHeight || parallelism <= 1) {
+            task.process(0, rows);
+        } else {
+            forkJoinPool.invoke(new BandAction(task, 0, rows, bandHeight));
+        }
+    }
+
+    private static class BandAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Task task;
+        private final int minY;
+        private final int maxY;
+        private final int bandHeight;
+
+        BandAction(Task task, int minY, int maxY, int bandHeight) {
+            this.task = task;
+            this.minY = minY;
+            this.maxY = maxY;
+            this.bandHeight = bandHeight;
+        }
+
+        @Override
+        protected void compute() {
+            if (maxY - minY <= bandHeight) {
+                task.process(minY, maxY);
+            } else {
+                int middleY = minY + (maxY - minY) / 2;
+                invokeAll(new BandAction(task, minY, middleY, bandHeight), new BandAction(task, middleY, maxY, bandHeight));
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import org.github.jipsg.common.image.io.ImageCodecPool;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scales and converts an image strip by strip so that the peak memory is
+ * proportional to "width x strip height" instead of "width x height".
+ * <p>
+ * Please note that the memory is only bounded when the image writer requests
+ * the image row by row or strip by strip - this is true for the JDK's PNG, TIFF
+ * and BMP writers but the JDK's JPEG writer fetches the whole raster at once.
+ * Sequential formats such as PNG and JPEG are decoded from the beginning for
+ * every strip, therefore larger strips are faster.
+ */
+public class StripedImageProcessor {
+
+    public static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    private int stripHeight = DEFAULT_STRIP_HEIGHT;
+    private int imageType = BufferedImage.TYPE_INT_RGB;
+    private final List<BufferedImageOp> bufferedImageOps = new ArrayList<BufferedImageOp>();
+
+    public int getStripHeight() {
+        return stripHeight;
+    }
+
+    /**
+     * Set the number of rows of the resulting image being processed at once.
+     */
+    public void setStripHeight(int stripHeight) {
+        if (stripHeight <= 0) {
+            throw new IllegalArgumentException("Invalid strip height : " + stripHeight);
+        }
+        this.stripHeight = stripHeight;
+    }
+
+    public int getImageType() {
+        return imageType;
+    }
+
+    /**
+     * Set the image type the strips are converted to, e.g. <code>BufferedImage.TYPE_INT_RGB</code>.
+     */
+    public void setImageType(int imageType) {
+        this.imageType = imageType;
+    }
+
+    /**
+     * Set the image operations applied to every strip - since every strip is
+     * processed on its own only point operations (no convolution) are supported.
+     */
+    public void setBufferedImageOps(BufferedImageOp... bufferedImageOps) {
+        this.bufferedImageOps.clear();
+        this.bufferedImageOps.addAll(Arrays.asList(bufferedImageOps));
+    }
+
+    /**
+     * Scale the source image to fit into the boundary and write it strip by strip.
+     *
+     * @param source     the image source
+     * @param boundary   the bounding box of the resulting image
+     * @param formatName the format of the resulting image
+     * @param targetFile the resulting image file
+     */
+    public void process(Object source, Dimension boundary, String formatName, File targetFile) throws Exception {
+
+        ImageInputStream imageInputStream = BufferedImageFactory.createImageInputStream(source);
+
+        try {
+            ImageReader imageReader = ImageCodecPool.getInstance().borrowReader(imageInputStream);
+
+            if (imageReader == null) {
+                throw new IIOException("No image reader found for : " + source);
+            }
+
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+
+                Dimension imageDimension = new Dimension(imageReader.getWidth(0), imageReader.getHeight(0));
+                Dimension scaledDimension = BufferedImageUtils.getScaledDimension(imageDimension, boundary);
+
+                StripedRenderedImage stripedRenderedImage = new StripedRenderedImage(
+                        imageReader,
+                        Math.max(1, scaledDimension.width),
+                        Math.max(1, scaledDimension.height),
+                        stripHeight,
+                        imageType,
+                        bufferedImageOps);
+
+                write(stripedRenderedImage, formatName, targetFile);
+            } finally {
+                ImageCodecPool.getInstance().returnReader(imageReader);
+            }
+        } finally {
+            imageInputStream.close();
+        }
+    }
+
+    private void write(StripedRenderedImage renderedImage, String formatName, File targetFile) throws Exception {
+
+        ImageWriter imageWriter = ImageCodecPool.getInstance().borrowWriter(formatName);
+
+        if (imageWriter == null) {
+            throw new IIOException("No image writer found for : " + formatName);
+        }
+
+        // the ImageOutputStream does not truncate existing files
+        if (targetFile.exists() && !targetFile.delete()) {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            throw new IIOException("Can't delete existing file : " + targetFile.getPath());
+        }
+
+        ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(targetFile);
+
+        try {
+            imageWriter.setOutput(imageOutputStream);
+            imageWriter.write(null, new IIOImage(renderedImage, null, null), imageWriter.getDefaultWriteParam());
+        } finally {
+            ImageCodecPool.getInstance().returnWriter(imageWriter);
+            imageOutputStream.close();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A scaled image made of horizontal strips which are decoded on demand using
+ * <code>ImageReadParam.setSourceRegion</code>. Only the most recently used strip
+ * is kept in memory so image writers pulling rows or strips (PNG, TIFF, BMP) never
+ * see the whole raster.
+ */
+class StripedRenderedImage implements RenderedImage {
+
+    private final ImageReader imageReader;
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int width;
+    private final int height;
+    private final int stripHeight;
+    private final int subsampling;
+    private final int imageType;
+    private final List<BufferedImageOp> bufferedImageOps;
+    private final ColorModel colorModel;
+
+    private int currentStripIndex = -1;
+    private Raster currentStrip;
+
+    StripedRenderedImage(ImageReader imageReader, int width, int height, int stripHeight, int imageType, List<BufferedImageOp> bufferedImageOps) throws IOException {
+        this.imageReader = imageReader;
+        this.sourceWidth = imageReader.getWidth(0);
+        this.sourceHeight = imageReader.getHeight(0);
+        this.width = width;
+        this.height = height;
+        this.stripHeight = stripHeight;
+        this.imageType = imageType;
+        this.bufferedImageOps = bufferedImageOps;
+        this.subsampling = BufferedImageFactory.getSubsampling(
+                new Dimension(sourceWidth, sourceHeight),
+                new Dimension(width, height));
+        this.colorModel = new BufferedImage(1, 1, imageType).getColorModel();
+    }
+
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    public SampleModel getSampleModel() {
+        return colorModel.createCompatibleSampleModel(width, stripHeight);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMinX() {
+        return 0;
+    }
+
+    public int getMinY() {
+        return 0;
+    }
+
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    public int getNumYTiles() {
+        return (height + stripHeight - 1) / stripHeight;
+    }
+
+    public int getMinTileX() {
+        return 0;
+    }
+
+    public int getMinTileY() {
+        return 0;
+    }
+
+    public int getTileWidth() {
+        return width;
+    }
+
+    public int getTileHeight() {
+        return stripHeight;
+    }
+
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    public int getTileGridYOffset() {
+        return 0;
+    }
+
+    public synchronized Raster getTile(int tileX, int tileY) {
+        if (tileY != currentStripIndex) {
+            try {
+                currentStrip = createStrip(tileY);
+                currentStripIndex = tileY;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to decode strip " + tileY, e);
+            }
+        }
+        return currentStrip;
+    }
+
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, width, height));
+    }
+
+    public Raster getData(Rectangle rect) {
+        WritableRaster result = colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+                .createWritableTranslatedChild(rect.x, rect.y);
+        copyData(result);
+        return result;
+    }
+
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            raster = colorModel.createCompatibleWritableRaster(width, height);
+        }
+
+        Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, width, height));
+
+        if (!bounds.isEmpty()) {
+            int firstStrip = bounds.y / stripHeight;
+            int lastStrip = (bounds.y + bounds.height - 1) / stripHeight;
+            for (int i = firstStrip; i <= lastStrip; i++) {
+                raster.setRect(getTile(0, i));
+            }
+        }
+
+        return raster;
+    }
+
+    /**
+     * Decode the source rows covering the strip (plus a small overlap to avoid seams),
+     * scale them to the target width and apply the color conversion and image operations.
+     */
+    private Raster createStrip(int stripIndex) throws IOException {
+
+        int y0 = stripIndex * stripHeight;
+        int y1 = Math.min(height, y0 + stripHeight);
+        double scaleX = (double) sourceWidth / width;
+        double scaleY = (double) sourceHeight / height;
+
+        int sourceY0 = Math.max(0, (int) Math.floor(y0 * scaleY) - subsampling);
+        int sourceY1 = Math.min(sourceHeight, (int) Math.ceil(y1 * scaleY) + subsampling);
+
+        ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+        imageReadParam.setSourceRegion(new Rectangle(0, sourceY0, sourceWidth, sourceY1 - sourceY0));
+        imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage sourceStrip = imageReader.read(0, imageReadParam);
+
+        BufferedImage strip = new BufferedImage(width, stripHeight, imageType);
+        Graphics2D graphics = strip.createGraphics();
+        if (!colorModel.hasAlpha()) {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, stripHeight);
+        }
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        AffineTransform transform = AffineTransform.getTranslateInstance(0, sourceY0 / scaleY - y0);
+        transform.scale(subsampling / scaleX, subsampling / scaleY);
+        graphics.drawRenderedImage(sourceStrip, transform);
+        graphics.dispose();
+
+        if (!bufferedImageOps.isEmpty()) {
+            strip = toImageType(BufferedImageOperations.apply(strip, bufferedImageOps));
+        }
+
+        return strip.getRaster().createTranslatedChild(0, y0);
+    }
+
+    private BufferedImage toImageType(BufferedImage bufferedImage) {
+        if (bufferedImage.getType() == imageType) {
+            return bufferedImage;
+        }
+        BufferedImage result = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), imageType);
+        Graphics2D graphics = result.createGraphics();
+        graphics.drawImage(bufferedImage, 0, 0, null);
+        graphics.dispose();
+        return result;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Creates thumbnails of multiple sizes from a single source image in one pass.
+ * <p>
+ * The source is probed for its dimension and decoded only once using source
+ * subsampling for the largest thumbnail - the bounding boxes are ordered by the
+ * size of the thumbnails fitted into them and not by their area, e.g. a portrait
+ * image gets a larger thumbnail from a 300x400 box than from a 600x200 box. The
+ * smaller thumbnails are cascaded from the next larger one, halving the image
+ * first if it is more than twice the target size to avoid aliasing. Every thumbnail
+ * is encoded on the executor as soon as it is scaled while the cascade continues.
+ * The memory of decoding, scaling and encoding is reserved from the
+ * <code>MemoryAdmissionController</code> of the <code>BufferedImageFactory</code>.
+ */
+public class ThumbnailSet {
+
+    private final List<Dimension> boundaries;
+    private String formatName = "jpeg";
+    private Executor executor = ForkJoinPool.commonPool();
+    private long maxInputBytes = AsyncImageProcessor.DEFAULT_MAX_INPUT_BYTES;
+
+    /**
+     * Constructor.
+     *
+     * @param boundaries the bounding boxes of the thumbnails
+     */
+    public ThumbnailSet(Dimension... boundaries) {
+        this(Arrays.asList(boundaries));
+    }
+
+    public ThumbnailSet(List<Dimension> boundaries) {
+        if (boundaries.isEmpty()) {
+            throw new IllegalArgumentException("No thumbnail sizes");
+        }
+        this.boundaries = new ArrayList<Dimension>(boundaries);
+    }
+
+    public List<Dimension> getBoundaries() {
+        return Collections.unmodifiableList(boundaries);
+    }
+
+    public String getFormatName() {
+        return formatName;
+    }
+
+    /**
+     * Set the informal format name of the thumbnails, e.g. "jpeg" or "png".
+     */
+    public void setFormatName(String formatName) {
+        this.formatName = formatName;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor encoding the thumbnails.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public long getMaxInputBytes() {
+        return maxInputBytes;
+    }
+
+    /**
+     * Set the maximum of the encoded input bytes being buffered when reading an input stream.
+     */
+    public void setMaxInputBytes(long maxInputBytes) {
+        if (maxInputBytes <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of input bytes : " + maxInputBytes);
+        }
+        this.maxInputBytes = maxInputBytes;
+    }
+
+    /**
+     * Create the thumbnails of the source image.
+     *
+     * @param source the image source - see <code>BufferedImageFactory.create()</code>
+     * @return the thumbnails in the order of the bounding boxes
+     */
+    public Result create(Object source) throws Exception {
+
+        // an input stream can't be read twice for probing and decoding
+        if (source instanceof InputStream) {
+            source = AsyncImageProcessor.readBytes((InputStream) source, maxInputBytes);
+        }
+
+        long startTime = System.nanoTime();
+        ImageInfo imageInfo = BufferedImageFactory.probe(source);
+        List<Dimension> scaledDimensions = getScaledDimensions(new Dimension(imageInfo.getWidth(), imageInfo.getHeight()));
+        List<Integer> cascade = getCascade(scaledDimensions);
+        Thumbnail[] thumbnails = new Thumbnail[boundaries.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+
+        Dimension boundary = boundaries.get(cascade.get(0));
+        MemoryAdmissionController memoryAdmissionController = BufferedImageFactory.getMemoryAdmissionController();
+        // the subsampled image and the thumbnails being smaller than it until they are encoded
+        MemoryAdmissionController.Reservation reservation = memoryAdmissionController != null
+                ? memoryAdmissionController.reserve(BufferedImageFactory.getSubsampledImageInfo(imageInfo, boundary), 2)
+                : null;
+        long decodeNanos;
+
+        try {
+            BufferedImage bufferedImage = BufferedImageFactory.create(source, boundary, ImageLimits.UNLIMITED, reservation);
+
+            if (bufferedImage == null) {
+                throw new IOException("No image reader found for : " + source);
+            }
+
+            decodeNanos = System.nanoTime() - startTime;
+
+            for (int index : cascade) {
+                startTime = System.nanoTime();
+                bufferedImage = scale(bufferedImage, scaledDimensions.get(index));
+                Thumbnail thumbnail = new Thumbnail(boundaries.get(index), bufferedImage, System.nanoTime() - startTime);
+                thumbnails[index] = thumbnail;
+                futures.add(encodeAsync(thumbnail));
+            }
+
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        } finally {
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+
+        return new Result(decodeNanos, Arrays.asList(thumbnails));
+    }
+
+    /**
+     * The dimensions of the thumbnails fitted into the bounding boxes while keeping
+     * the aspect ratio of the image - images are never scaled up.
+     */
+    List<Dimension> getScaledDimensions(Dimension imageDimension) {
+        List<Dimension> result = new ArrayList<Dimension>(boundaries.size());
+
+        for (Dimension boundary : boundaries) {
+            Dimension scaledDimension = BufferedImageUtils.getScaledDimension(imageDimension, boundary);
+            result.add(new Dimension(Math.max(1, scaledDimension.width), Math.max(1, scaledDimension.height)));
+        }
+
+        return result;
+    }
+
+    /**
+     * The indices of the thumbnails ordered by decreasing width and height.
+     */
+    static List<Integer> getCascade(final List<Dimension> scaledDimensions) {
+        List<Integer> result = new ArrayList<Integer>();
+
+        for (int i = 0; i < scaledDimensions.size(); i++) {
+            result.add(i);
+        }
+
+        Collections.sort(result, new Comparator<Integer>() {
+            public int compare(Integer index1, Integer index2) {
+                Dimension dimension1 = scaledDimensions.get(index1);
+                Dimension dimension2 = scaledDimensions.get(index2);
+                int result = Integer.compare(dimension2.width, dimension1.width);
+                return result != 0 ? result : Integer.compare(dimension2.height, dimension1.height);
+            }
+        });
+
+        return result;
+    }
+
+    private static BufferedImage scale(BufferedImage source, Dimension scaledDimension) {
+
+        int width = scaledDimension.width;
+        int height = scaledDimension.height;
+        BufferedImage result = source;
+
+        if (result.getWidth() == width && result.getHeight() == height) {
+            return result;
+        }
+
+        while (result.getWidth() / 2 >= width && result.getHeight() / 2 >= height) {
+            result = BufferedImageOperations.resample(result, result.getWidth() / 2, result.getHeight() / 2);
+        }
+
+        return BufferedImageOperations.resample(result, width, height);
+    }
+
+    private CompletableFuture<Void> encodeAsync(final Thumbnail thumbnail) {
+        return CompletableFuture.supplyAsync(new Supplier<Void>() {
+            public Void get() {
+                try {
+                    long startTime = System.nanoTime();
+                    BufferedImage bufferedImage = thumbnail.getBufferedImage();
+                    if (formatName.equalsIgnoreCase("jpg") || formatName.equalsIgnoreCase("jpeg")) {
+                        bufferedImage = BufferedImageOperations.fillTransparentPixel(bufferedImage);
+                    }
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    if (!BufferedImageFactory.writeBufferedImage(bufferedImage, formatName, outputStream)) {
+                        throw new IOException("No image writer found for : " + formatName);
+                    }
+                    thumbnail.setBytes(outputStream.toByteArray(), System.nanoTime() - startTime);
+                    return null;
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * The thumbnails of a source image.
+     */
+    public static class Result {
+
+        private final long decodeNanos;
+        private final List<Thumbnail> thumbnails;
+
+        Result(long decodeNanos, List<Thumbnail> thumbnails) {
+            this.decodeNanos = decodeNanos;
+            this.thumbnails = Collections.unmodifiableList(thumbnails);
+        }
+
+        /**
+         * Time spent decoding the source image.
+         */
+        public long getDecodeNanos() {
+            return decodeNanos;
+        }
+
+        /**
+         * The thumbnails in the order of the bounding boxes.
+         */
+        public List<Thumbnail> getThumbnails() {
+            return thumbnails;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "decodeMillis=" + decodeNanos / 1000000 +
+                    ", thumbnails=" + thumbnails +
+                    '}';
+        }
+    }
+
+    /**
+     * A single encoded thumbnail.
+     */
+    public static class Thumbnail {
+
+        private final Dimension boundary;
+        private final BufferedImage bufferedImage;
+        private final long scaleNanos;
+        private volatile byte[] bytes;
+        private volatile long encodeNanos;
+
+        Thumbnail(Dimension boundary, BufferedImage bufferedImage, long scaleNanos) {
+            this.boundary = boundary;
+            this.bufferedImage = bufferedImage;
+            this.scaleNanos = scaleNanos;
+        }
+
+        public Dimension getBoundary() {
+            return boundary;
+        }
+
+        public BufferedImage getBufferedImage() {
+            return bufferedImage;
+        }
+
+        /**
+         * The encoded thumbnail.
+         */
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Time spent scaling the thumbnail from the next larger one.
+         */
+        public long getScaleNanos() {
+            return scaleNanos;
+        }
+
+        /**
+         * Time spent encoding the thumbnail.
+         */
+        public long getEncodeNanos() {
+            return encodeNanos;
+        }
+
+        /**
+         * Write the encoded thumbnail to the file.
+         */
+        public void write(File file) throws IOException {
+            OutputStream outputStream = new FileOutputStream(file);
+            try {
+                outputStream.write(bytes);
+            } finally {
+                outputStream.close();
+            }
+        }
+
+        void setBytes(byte[] bytes, long encodeNanos) {
+            this.bytes = bytes;
+            this.encodeNanos = encodeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Thumbnail{" +
+                    "width=" + bufferedImage.getWidth() +
+                    ", height=" + bufferedImage.getHeight() +
+                    ", bytes=" + (bytes != null ? bytes.length : 0) +
+                    ", scaleMillis=" + scaleNanos / 1000000 +
+                    ", encodeMillis=" + encodeNanos / 1000000 +
+                    '}';
+        }
+    }
+}
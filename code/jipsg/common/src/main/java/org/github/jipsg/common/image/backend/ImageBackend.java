@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.backend;
+
+import org.github.jipsg.common.image.MemoryAdmissionController;
+import org.github.jipsg.common.image.io.ImageFormat;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * An image library being able to decode, scale and encode images, e.g. ImageIO,
+ * JAI, Apache Commons Imaging or TwelveMonkeys.
+ */
+public interface ImageBackend {
+
+    /**
+     * The name of the backend, e.g. "imageio".
+     */
+    String getName();
+
+    /**
+     * Check if the backend is supposed to decode the image format - the actual
+     * decoding may still fail for unsupported variants, e.g. CMYK JPEGs.
+     */
+    boolean canDecode(ImageFormat imageFormat);
+
+    /**
+     * Decode the image file.
+     *
+     * @return the image or null if the image format is not supported
+     */
+    BufferedImage createBufferedImage(File file) throws Exception;
+
+    /**
+     * Decode the image file within a job which reserved the memory of the decoded image
+     * already - backends reserving the memory themselves must not reserve it again.
+     *
+     * @param reservation the reservation of the job
+     * @return the image or null if the image format is not supported
+     */
+    default BufferedImage createBufferedImage(File file, MemoryAdmissionController.Reservation reservation) throws Exception {
+        return createBufferedImage(file);
+    }
+
+    /**
+     * Scale the image to fit into the given boundary while keeping its aspect ratio.
+     */
+    BufferedImage resample(BufferedImage bufferedImage, int width, int height);
+
+    /**
+     * Encode the image using the informal format name, e.g. "png".
+     */
+    void writeBufferedImage(BufferedImage bufferedImage, String formatName, File file) throws Exception;
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.backend;
+
+import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.ImageInfo;
+import org.github.jipsg.common.image.MemoryAdmissionController;
+import org.github.jipsg.common.image.io.ImageFormat;
+import org.github.jipsg.common.image.io.ImageFormatDetector;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes every image to the fastest backend known to decode its format.
+ * <p>
+ * The image format is detected by its magic bytes and the image is passed to the
+ * preferred backend of that format. If the backend fails (e.g. CMYK or arithmetic
+ * coded JPEGs with ImageIO, TIFF compression 2/3/4 without a TIFF plugin) the
+ * remaining backends are tried in registration order. The preferred backend of a
+ * format is the one with the lowest average decoding time among the backends which
+ * decoded the format successfully - it is dropped again once it fails more often
+ * than it succeeds.
+ * <p>
+ * The raster memory of an image is reserved from the shared <code>MemoryAdmissionController</code>
+ * of the <code>BufferedImageFactory</code> before any backend decodes it.
+ * <p>
+ * Every n-th image of a format is passed to one of the other backends supporting
+ * the format first, in turn, so that their average decoding times keep being measured
+ * and a faster backend can take over.
+ */
+public class ImageBackendRouter implements ImageBackend {
+
+    public static final int DEFAULT_EXPLORATION_INTERVAL = 16;
+
+    private final List<ImageBackend> imageBackends = new CopyOnWriteArrayList<ImageBackend>();
+    private final ConcurrentMap<ImageFormat, ImageBackend> preferredImageBackends = new ConcurrentHashMap<ImageFormat, ImageBackend>();
+    private final ConcurrentMap<String, ImageBackendStatistics> statistics = new ConcurrentHashMap<String, ImageBackendStatistics>();
+    private final ConcurrentMap<ImageFormat, AtomicLong> decodeCounts = new ConcurrentHashMap<ImageFormat, AtomicLong>();
+    private volatile ImageBackend resamplingImageBackend;
+    private volatile int explorationInterval = DEFAULT_EXPLORATION_INTERVAL;
+
+    /**
+     * Constructor.
+     *
+     * @param imageBackends the backends in the order they are tried
+     */
+    public ImageBackendRouter(ImageBackend... imageBackends) {
+        if (imageBackends.length == 0) {
+            throw new IllegalArgumentException("No image backends");
+        }
+        this.imageBackends.addAll(Arrays.asList(imageBackends));
+        this.resamplingImageBackend = imageBackends[0];
+    }
+
+    public String getName() {
+        return "router";
+    }
+
+    public boolean canDecode(ImageFormat imageFormat) {
+        for (ImageBackend imageBackend : imageBackends) {
+            if (imageBackend.canDecode(imageFormat)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode the image with the preferred backend of its format and fall back to
+     * the remaining backends.
+     *
+     * @return the image or null if no backend supports the image format
+     * @throws Exception the exception of the last failed backend
+     */
+    public BufferedImage createBufferedImage(File file) throws Exception {
+
+        MemoryAdmissionController.Reservation reservation = reserve(file);
+
+        try {
+            return createBufferedImage(file, reservation);
+        } finally {
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+    }
+
+    /**
+     * Decode the image within a job which reserved its memory already - the reservation
+     * is passed to the backends.
+     *
+     * @param reservation the reservation of the job or null if the memory is not reserved
+     */
+    public BufferedImage createBufferedImage(File file, MemoryAdmissionController.Reservation reservation) throws Exception {
+
+        ImageFormat imageFormat = ImageFormatDetector.detect(file);
+        Exception lastException = null;
+
+        for (ImageBackend imageBackend : getImageBackends(imageFormat)) {
+            ImageBackendStatistics imageBackendStatistics = getStatistics(imageBackend, imageFormat);
+            long startTime = System.nanoTime();
+            try {
+                BufferedImage result = reservation != null ? imageBackend.createBufferedImage(file, reservation) : imageBackend.createBufferedImage(file);
+                if (result != null) {
+                    imageBackendStatistics.recordSuccess(System.nanoTime() - startTime);
+                    updatePreferredImageBackend(imageFormat, imageBackend);
+                    return result;
+                }
+                imageBackendStatistics.recordFailure();
+            } catch (Exception e) {
+                imageBackendStatistics.recordFailure();
+                lastException = e;
+            }
+        }
+
+        if (imageFormat != ImageFormat.UNKNOWN) {
+            removeFailingPreferredImageBackend(imageFormat);
+        }
+
+        if (lastException != null) {
+            throw lastException;
+        }
+
+        return null;
+    }
+
+    /**
+     * Scale the image using the resampling backend - the first backend by default.
+     */
+    public BufferedImage resample(BufferedImage bufferedImage, int width, int height) {
+        return resamplingImageBackend.resample(bufferedImage, width, height);
+    }
+
+    /**
+     * Encode the image with the first backend not failing.
+     */
+    public void writeBufferedImage(BufferedImage bufferedImage, String formatName, File file) throws Exception {
+
+        Exception lastException = null;
+
+        for (ImageBackend imageBackend : imageBackends) {
+            try {
+                imageBackend.writeBufferedImage(bufferedImage, formatName, file);
+                return;
+            } catch (Exception e) {
+                lastException = e;
+            }
+        }
+
+        throw lastException;
+    }
+
+    public ImageBackend getResamplingImageBackend() {
+        return resamplingImageBackend;
+    }
+
+    /**
+     * Set the backend used for scaling images, e.g. Thumbnailator.
+     */
+    public void setResamplingImageBackend(ImageBackend resamplingImageBackend) {
+        this.resamplingImageBackend = resamplingImageBackend;
+    }
+
+    public int getExplorationInterval() {
+        return explorationInterval;
+    }
+
+    /**
+     * Set how often a non-preferred backend is tried first, e.g. every 16th image
+     * of a format - zero always tries the preferred backend first.
+     */
+    public void setExplorationInterval(int explorationInterval) {
+        if (explorationInterval < 0) {
+            throw new IllegalArgumentException("Invalid exploration interval : " + explorationInterval);
+        }
+        this.explorationInterval = explorationInterval;
+    }
+
+    /**
+     * Get the backend currently preferred for the image format.
+     *
+     * @return the backend or null if no image of the format was decoded so far
+     */
+    public ImageBackend getPreferredImageBackend(ImageFormat imageFormat) {
+        return preferredImageBackends.get(imageFormat);
+    }
+
+    /**
+     * Get the decoding statistics of the backend for the image format.
+     */
+    public ImageBackendStatistics getStatistics(ImageBackend imageBackend, ImageFormat imageFormat) {
+        String key = imageBackend.getName() + ":" + imageFormat;
+        ImageBackendStatistics result = statistics.get(key);
+
+        if (result == null) {
+            ImageBackendStatistics imageBackendStatistics = new ImageBackendStatistics();
+            result = statistics.putIfAbsent(key, imageBackendStatistics);
+            if (result == null) {
+                result = imageBackendStatistics;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the backends to try for the image format - the preferred backend comes first
+     * except for every n-th image where one of the other backends is explored first.
+     */
+    List<ImageBackend> getImageBackends(ImageFormat imageFormat) {
+
+        List<ImageBackend> result = new ArrayList<ImageBackend>(imageBackends.size());
+        ImageBackend preferredImageBackend = preferredImageBackends.get(imageFormat);
+
+        for (ImageBackend imageBackend : imageBackends) {
+            if (imageBackend != preferredImageBackend && imageBackend.canDecode(imageFormat)) {
+                result.add(imageBackend);
+            }
+        }
+
+        if (preferredImageBackend != null) {
+            long exploration = getExploration(imageFormat);
+            if (exploration >= 0 && !result.isEmpty()) {
+                result.add(0, result.remove((int) (exploration % result.size())));
+                result.add(1, preferredImageBackend);
+            } else {
+                result.add(0, preferredImageBackend);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Count the images of the format and get the number of the exploration round.
+     *
+     * @return the round or -1 if the preferred backend is tried first
+     */
+    private long getExploration(ImageFormat imageFormat) {
+
+        int interval = explorationInterval;
+
+        if (interval == 0) {
+            return -1;
+        }
+
+        AtomicLong decodeCount = decodeCounts.get(imageFormat);
+
+        if (decodeCount == null) {
+            decodeCounts.putIfAbsent(imageFormat, new AtomicLong());
+            decodeCount = decodeCounts.get(imageFormat);
+        }
+
+        long count = decodeCount.incrementAndGet();
+        return count % interval == 0 ? count / interval - 1 : -1;
+    }
+
+    /**
+     * Reserve the raster memory from the controller of the <code>BufferedImageFactory</code>
+     * before any backend decodes the image.
+     *
+     * @return the reservation or null if ImageIO can't read the image header
+     */
+    private static MemoryAdmissionController.Reservation reserve(File file) throws Exception {
+
+        MemoryAdmissionController memoryAdmissionController = BufferedImageFactory.getMemoryAdmissionController();
+
+        if (memoryAdmissionController == null) {
+            return null;
+        }
+
+        ImageInfo imageInfo;
+
+        try {
+            imageInfo = BufferedImageFactory.probe(file);
+        } catch (IOException e) {
+            return null;
+        }
+
+        return memoryAdmissionController.reserve(imageInfo, 1);
+    }
+
+    private void updatePreferredImageBackend(ImageFormat imageFormat, ImageBackend imageBackend) {
+
+        if (imageFormat == ImageFormat.UNKNOWN) {
+            return;
+        }
+
+        ImageBackend preferredImageBackend = preferredImageBackends.get(imageFormat);
+
+        if (preferredImageBackend == null) {
+            preferredImageBackends.putIfAbsent(imageFormat, imageBackend);
+        } else if (preferredImageBackend != imageBackend) {
+            long averageNanos = getStatistics(imageBackend, imageFormat).getAverageNanos();
+            if (averageNanos < getStatistics(preferredImageBackend, imageFormat).getAverageNanos()) {
+                preferredImageBackends.replace(imageFormat, preferredImageBackend, imageBackend);
+            }
+        }
+
+        removeFailingPreferredImageBackend(imageFormat);
+    }
+
+    private void removeFailingPreferredImageBackend(ImageFormat imageFormat) {
+        ImageBackend preferredImageBackend = preferredImageBackends.get(imageFormat);
+
+        if (preferredImageBackend != null) {
+            ImageBackendStatistics imageBackendStatistics = getStatistics(preferredImageBackend, imageFormat);
+            if (imageBackendStatistics.getFailures() > imageBackendStatistics.getSuccesses()) {
+                preferredImageBackends.remove(imageFormat, preferredImageBackend);
+            }
+        }
+    }
+}
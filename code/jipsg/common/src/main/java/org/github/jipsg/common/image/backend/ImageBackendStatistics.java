@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.backend;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoding statistics of a single backend for a single image format.
+ */
+public class ImageBackendStatistics {
+
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    void recordSuccess(long nanos) {
+        successes.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Total decoding time of the successfully decoded images.
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * Average decoding time of the successfully decoded images or <code>Long.MAX_VALUE</code>
+     * if no image was decoded so far.
+     */
+    public long getAverageNanos() {
+        long count = successes.get();
+        return count > 0 ? totalNanos.get() / count : Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageBackendStatistics{" +
+                "successes=" + getSuccesses() +
+                ", failures=" + getFailures() +
+                ", averageMillis=" + (getSuccesses() > 0 ? getAverageNanos() / 1000000 : -1) +
+                '}';
+    }
+}
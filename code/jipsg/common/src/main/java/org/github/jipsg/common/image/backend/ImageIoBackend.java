@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.backend;
+
+import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.BufferedImageOperations;
+import org.github.jipsg.common.image.BufferedImageUtils;
+import org.github.jipsg.common.image.ImageLimits;
+import org.github.jipsg.common.image.MemoryAdmissionController;
+import org.github.jipsg.common.image.io.ImageCodecPool;
+import org.github.jipsg.common.image.io.ImageFormat;
+
+import javax.imageio.IIOException;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+/**
+ * Backend using the registered ImageIO plugins.
+ */
+public class ImageIoBackend implements ImageBackend {
+
+    public String getName() {
+        return "imageio";
+    }
+
+    public boolean canDecode(ImageFormat imageFormat) {
+        return imageFormat == ImageFormat.UNKNOWN
+                || ImageCodecPool.getInstance().getImageReaderRoutingTable().getImageReaderSpi(imageFormat) != null;
+    }
+
+    public BufferedImage createBufferedImage(File file) throws Exception {
+        return BufferedImageFactory.create(file);
+    }
+
+    public BufferedImage createBufferedImage(File file, MemoryAdmissionController.Reservation reservation) throws Exception {
+        return BufferedImageFactory.create(file, ImageLimits.UNLIMITED, reservation);
+    }
+
+    public BufferedImage resample(BufferedImage bufferedImage, int width, int height) {
+        Dimension imageDimension = new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+        Dimension scaledDimension = BufferedImageUtils.getScaledDimension(imageDimension, new Dimension(width, height));
+        return BufferedImageOperations.resample(bufferedImage, Math.max(1, scaledDimension.width), Math.max(1, scaledDimension.height));
+    }
+
+    public void writeBufferedImage(BufferedImage bufferedImage, String formatName, File file) throws Exception {
+        if (!BufferedImageFactory.writeBufferedImage(bufferedImage, formatName, file)) {
+            throw new IIOException("No image writer found for : " + formatName);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
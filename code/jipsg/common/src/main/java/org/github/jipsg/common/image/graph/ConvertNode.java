@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Converts the source node to another image type, e.g. dropping the alpha
+ * channel before encoding a JPEG - transparent pixels become white.
+ */
+public class ConvertNode extends ImageNode {
+
+    private final ImageNode source;
+
+    public ConvertNode(ImageNode source, int imageType) {
+        super(source.getWidth(), source.getHeight(), imageType, source.getTileWidth(), source.getTileHeight());
+        this.source = source;
+    }
+
+    public ImageNode getSource() {
+        return source;
+    }
+
+    @Override
+    protected BufferedImage computeRegion(Rectangle region) {
+        return toImageType(source.getRegion(region), getImageType());
+    }
+}
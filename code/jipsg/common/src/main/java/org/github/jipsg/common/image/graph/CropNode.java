@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * A rectangular region of the source node - only the source tiles intersecting
+ * the requested regions are computed.
+ */
+public class CropNode extends ImageNode {
+
+    private final ImageNode source;
+    private final Rectangle region;
+
+    public CropNode(ImageNode source, Rectangle region) {
+        super(region.width, region.height, source.getImageType());
+
+        if (!new Rectangle(0, 0, source.getWidth(), source.getHeight()).contains(region)) {
+            throw new IllegalArgumentException("Crop region exceeds the image : " + region);
+        }
+
+        this.source = source;
+        this.region = new Rectangle(region);
+    }
+
+    public ImageNode getSource() {
+        return source;
+    }
+
+    public Rectangle getRegion() {
+        return new Rectangle(region);
+    }
+
+    @Override
+    protected boolean isCached() {
+        return false;
+    }
+
+    @Override
+    protected BufferedImage computeRegion(Rectangle region) {
+        return source.getRegion(new Rectangle(this.region.x + region.x, this.region.y + region.y, region.width, region.height));
+    }
+}
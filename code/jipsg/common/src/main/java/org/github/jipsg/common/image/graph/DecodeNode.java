@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.io.ImageCodecPool;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+
+/**
+ * The source of an image graph decoding the regions asked for using
+ * <code>ImageReadParam.setSourceRegion</code>, optionally subsampled.
+ * <p>
+ * Tiled images (e.g. tiled TIFFs) are decoded along their own tiles, all other
+ * images in full-width strips - sequential formats such as JPEG and PNG are
+ * decoded from the beginning for every strip, so the strips are kept in the
+ * tile cache. The node holds an image reader borrowed from the
+ * {@link ImageCodecPool} and must be closed.
+ */
+public class DecodeNode extends ImageNode implements Closeable {
+
+    public static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    private final ImageInputStream imageInputStream;
+    private final ImageReader imageReader;
+    private final int subsampling;
+    private final boolean isOwner;
+
+    private DecodeNode(ImageInputStream imageInputStream, ImageReader imageReader, int subsampling, int[] layout, boolean isOwner) {
+        super(layout[0], layout[1], layout[2], layout[3], layout[4]);
+        this.imageInputStream = imageInputStream;
+        this.imageReader = imageReader;
+        this.subsampling = subsampling;
+        this.isOwner = isOwner;
+    }
+
+    /**
+     * Open the image source, e.g. a file or an input stream, without decoding any pixels.
+     */
+    public static DecodeNode open(Object source) throws Exception {
+
+        ImageInputStream imageInputStream = BufferedImageFactory.createImageInputStream(source);
+        ImageReader imageReader = null;
+
+        try {
+            imageReader = ImageCodecPool.getInstance().borrowReader(imageInputStream);
+
+            if (imageReader == null) {
+                throw new IIOException("No image reader found for : " + source);
+            }
+
+            imageReader.setInput(imageInputStream, true, true);
+            return new DecodeNode(imageInputStream, imageReader, 1, getLayout(imageReader, 1), true);
+        } catch (Exception e) {
+            ImageCodecPool.getInstance().returnReader(imageReader);
+            imageInputStream.close();
+            throw e;
+        }
+    }
+
+    public int getSubsampling() {
+        return subsampling;
+    }
+
+    /**
+     * Get a node decoding every n-th pixel of every n-th row of this image - the
+     * returned node shares the reader of this node.
+     */
+    public DecodeNode subsample(int subsampling) throws IOException {
+        if (subsampling <= 0) {
+            throw new IllegalArgumentException("Invalid subsampling : " + subsampling);
+        }
+        if (subsampling == this.subsampling) {
+            return this;
+        }
+        synchronized (imageReader) {
+            return new DecodeNode(imageInputStream, imageReader, subsampling, getLayout(imageReader, subsampling), false);
+        }
+    }
+
+    /**
+     * Return the image reader to the pool - nodes created by {@link #subsample(int)}
+     * are closed together with the node they were created from.
+     */
+    public void close() throws IOException {
+        getTileCache().remove(this);
+        if (isOwner) {
+            synchronized (imageReader) {
+                ImageCodecPool.getInstance().returnReader(imageReader);
+                imageInputStream.close();
+            }
+        }
+    }
+
+    @Override
+    protected BufferedImage computeRegion(Rectangle region) {
+        synchronized (imageReader) {
+            try {
+                int sourceWidth = imageReader.getWidth(0);
+                int sourceHeight = imageReader.getHeight(0);
+                int x = region.x * subsampling;
+                int y = region.y * subsampling;
+                Rectangle sourceRegion = new Rectangle(
+                        x,
+                        y,
+                        Math.min(sourceWidth - x, region.width * subsampling),
+                        Math.min(sourceHeight - y, region.height * subsampling));
+
+                ImageReadParam imageReadParam = imageReader.getDefaultReadParam();
+                imageReadParam.setSourceRegion(sourceRegion);
+                imageReadParam.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return imageReader.read(0, imageReadParam);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to decode region " + region, e);
+            }
+        }
+    }
+
+    /**
+     * Determine width, height, image type and tile size of the (subsampled) image.
+     */
+    private static int[] getLayout(ImageReader imageReader, int subsampling) throws IOException {
+        int width = (imageReader.getWidth(0) + subsampling - 1) / subsampling;
+        int height = (imageReader.getHeight(0) + subsampling - 1) / subsampling;
+        int imageType = BufferedImage.TYPE_INT_RGB;
+
+        Iterator<ImageTypeSpecifier> imageTypes = imageReader.getImageTypes(0);
+        if (imageTypes != null && imageTypes.hasNext()) {
+            ImageTypeSpecifier imageTypeSpecifier = imageTypes.next();
+            imageType = getStandardImageType(imageTypeSpecifier.getBufferedImageType());
+            if (imageType != imageTypeSpecifier.getBufferedImageType() && !imageTypeSpecifier.getColorModel().hasAlpha()) {
+                imageType = BufferedImage.TYPE_INT_RGB;
+            }
+        }
+
+        if (imageReader.isImageTiled(0)) {
+            int tileWidth = Math.max(1, imageReader.getTileWidth(0) / subsampling);
+            int tileHeight = Math.max(1, imageReader.getTileHeight(0) / subsampling);
+            return new int[]{width, height, imageType, tileWidth, tileHeight};
+        }
+
+        return new int[]{width, height, imageType, width, Math.max(1, DEFAULT_STRIP_HEIGHT / subsampling)};
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import org.github.jipsg.common.image.ops.PointOp;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+
+/**
+ * A node of a lazily evaluated image graph. Nothing is computed when the graph
+ * is built - the pixels of a node are computed tile by tile when a consumer asks
+ * for a region, and a node asks its source only for the region it depends on.
+ * Computed tiles are kept in a bounded {@link TileCache} shared by all nodes.
+ * <p>
+ * A typical graph decodes a huge image, crops and scales it and hands the result
+ * to an image writer which pulls the rows it encodes:
+ * <pre>
+ * DecodeNode decodeNode = DecodeNode.open(file);
+ * ImageNode preview = decodeNode.crop(region).scale(320, 240).apply(new InvertImageOp());
+ * ImageIO.write(preview.toRenderedImage(), "png", targetFile);
+ * decodeNode.close();
+ * </pre>
+ * Tiles and regions returned by a node may be cached and must not be modified.
+ */
+public abstract class ImageNode {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final int width;
+    private final int height;
+    private final int imageType;
+    private final int tileWidth;
+    private final int tileHeight;
+    private TileCache tileCache = TileCache.getInstance();
+
+    protected ImageNode(int width, int height, int imageType) {
+        this(width, height, imageType, DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE);
+    }
+
+    protected ImageNode(int width, int height, int imageType, int tileWidth, int tileHeight) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image size : " + width + "x" + height);
+        }
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Invalid tile size : " + tileWidth + "x" + tileHeight);
+        }
+        this.width = width;
+        this.height = height;
+        this.imageType = getStandardImageType(imageType);
+        this.tileWidth = Math.min(width, tileWidth);
+        this.tileHeight = Math.min(height, tileHeight);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The type of the images computed by this node, e.g. <code>BufferedImage.TYPE_INT_RGB</code>.
+     */
+    public int getImageType() {
+        return imageType;
+    }
+
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    public int getNumXTiles() {
+        return (width + tileWidth - 1) / tileWidth;
+    }
+
+    public int getNumYTiles() {
+        return (height + tileHeight - 1) / tileHeight;
+    }
+
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Set the cache keeping the tiles of this node.
+     */
+    public void setTileCache(TileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Get a tile of this node - tiles at the right and bottom border are smaller.
+     */
+    public BufferedImage getTile(int tileX, int tileY) {
+        if (tileX < 0 || tileY < 0 || tileX >= getNumXTiles() || tileY >= getNumYTiles()) {
+            throw new IllegalArgumentException("Invalid tile : " + tileX + "," + tileY);
+        }
+
+        BufferedImage result = isCached() ? tileCache.get(this, tileX, tileY) : null;
+
+        if (result == null) {
+            int x = tileX * tileWidth;
+            int y = tileY * tileHeight;
+            Rectangle region = new Rectangle(x, y, Math.min(tileWidth, width - x), Math.min(tileHeight, height - y));
+            result = toImageType(computeRegion(region), imageType);
+            if (isCached()) {
+                tileCache.put(this, tileX, tileY, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get an arbitrary region of this node assembled from the tiles intersecting it.
+     */
+    public BufferedImage getRegion(Rectangle region) {
+        Rectangle bounds = region.intersection(new Rectangle(0, 0, width, height));
+
+        if (bounds.isEmpty() || !bounds.equals(region)) {
+            throw new IllegalArgumentException("Invalid region : " + region);
+        }
+
+        int minTileX = region.x / tileWidth;
+        int minTileY = region.y / tileHeight;
+        int maxTileX = (region.x + region.width - 1) / tileWidth;
+        int maxTileY = (region.y + region.height - 1) / tileHeight;
+
+        if (minTileX == maxTileX && minTileY == maxTileY) {
+            BufferedImage tile = getTile(minTileX, minTileY);
+            return tile.getSubimage(region.x - minTileX * tileWidth, region.y - minTileY * tileHeight, region.width, region.height);
+        }
+
+        BufferedImage result = new BufferedImage(region.width, region.height, imageType);
+
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                Rectangle tileBounds = new Rectangle(tileX * tileWidth, tileY * tileHeight, tileWidth, tileHeight).intersection(region);
+                BufferedImage tile = getTile(tileX, tileY);
+                result.getRaster().setDataElements(
+                        tileBounds.x - region.x,
+                        tileBounds.y - region.y,
+                        tile.getRaster().createChild(tileBounds.x - tileX * tileWidth, tileBounds.y - tileY * tileHeight, tileBounds.width, tileBounds.height, 0, 0, null));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Compute the whole image.
+     */
+    public BufferedImage toBufferedImage() {
+        return getRegion(new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Get a rendered image computing its tiles on demand, e.g. to be passed to an image writer.
+     */
+    public RenderedImage toRenderedImage() {
+        return new NodeRenderedImage(this);
+    }
+
+    public ImageNode crop(Rectangle region) {
+        return new CropNode(this, region);
+    }
+
+    public ImageNode scale(int width, int height) {
+        return ScaleNode.create(this, width, height);
+    }
+
+    public ImageNode convert(int imageType) {
+        return imageType == this.imageType ? this : new ConvertNode(this, imageType);
+    }
+
+    public ImageNode apply(PointOp... pointOps) {
+        return pointOps.length == 0 ? this : new PointOpNode(this, Arrays.asList(pointOps));
+    }
+
+    ColorModel getColorModel() {
+        return new BufferedImage(1, 1, imageType).getColorModel();
+    }
+
+    /**
+     * Does this node keep its tiles in the tile cache? Nodes which are cheaper to
+     * compute than to cache, e.g. a crop, return false.
+     */
+    protected boolean isCached() {
+        return true;
+    }
+
+    /**
+     * Compute the pixels of the given region.
+     *
+     * @param region the region within the bounds of this node
+     * @return an image of the size of the region
+     */
+    protected abstract BufferedImage computeRegion(Rectangle region);
+
+    /**
+     * Map the image types without a fixed layout to <code>TYPE_INT_ARGB</code> or <code>TYPE_INT_RGB</code>.
+     */
+    static int getStandardImageType(int imageType) {
+        switch (imageType) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_4BYTE_ABGR_PRE:
+            case BufferedImage.TYPE_BYTE_GRAY:
+            case BufferedImage.TYPE_USHORT_GRAY:
+                return imageType;
+            default:
+                return BufferedImage.TYPE_INT_ARGB;
+        }
+    }
+
+    static int getStandardImageType(BufferedImage bufferedImage) {
+        int result = getStandardImageType(bufferedImage.getType());
+        if (result != bufferedImage.getType() && !bufferedImage.getColorModel().hasAlpha()) {
+            result = BufferedImage.TYPE_INT_RGB;
+        }
+        return result;
+    }
+
+    static BufferedImage toImageType(BufferedImage bufferedImage, int imageType) {
+        if (bufferedImage.getType() == imageType) {
+            return bufferedImage;
+        }
+        BufferedImage result = new BufferedImage(bufferedImage.getWidth(), bufferedImage.getHeight(), imageType);
+        Graphics2D graphics = result.createGraphics();
+        // transparent pixels become white when the alpha channel is dropped
+        graphics.drawImage(bufferedImage, 0, 0, result.getColorModel().hasAlpha() ? null : Color.WHITE, null);
+        graphics.dispose();
+        return result;
+    }
+}
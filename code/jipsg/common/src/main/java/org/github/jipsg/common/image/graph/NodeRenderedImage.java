@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Vector;
+
+/**
+ * Exposes an image node as a tiled rendered image so that image writers pull
+ * only the tiles they are encoding.
+ */
+class NodeRenderedImage implements RenderedImage {
+
+    private final ImageNode imageNode;
+    private final ColorModel colorModel;
+
+    NodeRenderedImage(ImageNode imageNode) {
+        this.imageNode = imageNode;
+        this.colorModel = imageNode.getColorModel();
+    }
+
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    public Object getProperty(String name) {
+        return Image.UndefinedProperty;
+    }
+
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    public ColorModel getColorModel() {
+        return colorModel;
+    }
+
+    public SampleModel getSampleModel() {
+        return colorModel.createCompatibleSampleModel(getTileWidth(), getTileHeight());
+    }
+
+    public int getWidth() {
+        return imageNode.getWidth();
+    }
+
+    public int getHeight() {
+        return imageNode.getHeight();
+    }
+
+    public int getMinX() {
+        return 0;
+    }
+
+    public int getMinY() {
+        return 0;
+    }
+
+    public int getNumXTiles() {
+        return imageNode.getNumXTiles();
+    }
+
+    public int getNumYTiles() {
+        return imageNode.getNumYTiles();
+    }
+
+    public int getMinTileX() {
+        return 0;
+    }
+
+    public int getMinTileY() {
+        return 0;
+    }
+
+    public int getTileWidth() {
+        return imageNode.getTileWidth();
+    }
+
+    public int getTileHeight() {
+        return imageNode.getTileHeight();
+    }
+
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    public int getTileGridYOffset() {
+        return 0;
+    }
+
+    /**
+     * Get a tile of the full tile size - tiles at the borders are padded.
+     */
+    public Raster getTile(int tileX, int tileY) {
+        int x = tileX * getTileWidth();
+        int y = tileY * getTileHeight();
+        BufferedImage tile = imageNode.getTile(tileX, tileY);
+
+        if (tile.getWidth() == getTileWidth() && tile.getHeight() == getTileHeight()) {
+            return tile.getRaster().createTranslatedChild(x, y);
+        }
+
+        WritableRaster result = colorModel.createCompatibleWritableRaster(getTileWidth(), getTileHeight());
+        result.setDataElements(0, 0, tile.getRaster());
+        return result.createTranslatedChild(x, y);
+    }
+
+    public Raster getData() {
+        return getData(new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    public Raster getData(Rectangle rect) {
+        WritableRaster result = colorModel.createCompatibleWritableRaster(rect.width, rect.height)
+                .createWritableTranslatedChild(rect.x, rect.y);
+        copyData(result);
+        return result;
+    }
+
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            raster = colorModel.createCompatibleWritableRaster(getWidth(), getHeight());
+        }
+
+        Rectangle bounds = raster.getBounds().intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+
+        if (!bounds.isEmpty()) {
+            raster.setDataElements(bounds.x, bounds.y, imageNode.getRegion(bounds).getRaster());
+        }
+
+        return raster;
+    }
+}
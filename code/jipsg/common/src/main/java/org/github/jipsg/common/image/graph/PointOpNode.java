@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import org.github.jipsg.common.image.ops.FusedPointOp;
+import org.github.jipsg.common.image.ops.PointOp;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Applies point operations fused into a single pass to the tiles of the source node.
+ */
+public class PointOpNode extends ImageNode {
+
+    private final ImageNode source;
+    private final FusedPointOp fusedPointOp;
+
+    public PointOpNode(ImageNode source, List<? extends PointOp> pointOps) {
+        this(source, new FusedPointOp(pointOps));
+    }
+
+    private PointOpNode(ImageNode source, FusedPointOp fusedPointOp) {
+        super(source.getWidth(),
+                source.getHeight(),
+                fusedPointOp.createCompatibleDestImage(new BufferedImage(1, 1, source.getImageType()), null).getType(),
+                source.getTileWidth(),
+                source.getTileHeight());
+        this.source = source;
+        this.fusedPointOp = fusedPointOp;
+    }
+
+    public ImageNode getSource() {
+        return source;
+    }
+
+    @Override
+    protected BufferedImage computeRegion(Rectangle region) {
+        return fusedPointOp.filter(source.getRegion(region), null);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import org.github.jipsg.common.image.BufferedImageFactory;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Scales the source node to the exact width and height using bilinear
+ * interpolation. A tile is computed from the source region it maps to plus a
+ * small margin, so neighbouring tiles join without seams.
+ * <p>
+ * When scaling down a {@link DecodeNode} the image is decoded with subsampling
+ * first so that a small preview of a huge image never sees the full resolution.
+ */
+public class ScaleNode extends ImageNode {
+
+    /** The number of additional source pixels around a tile */
+    private static final int MARGIN = 2;
+
+    private final ImageNode source;
+    private final double scaleX;
+    private final double scaleY;
+
+    public ScaleNode(ImageNode source, int width, int height) {
+        super(width, height, source.getImageType());
+        this.source = source;
+        this.scaleX = (double) source.getWidth() / width;
+        this.scaleY = (double) source.getHeight() / height;
+    }
+
+    /**
+     * Create a node scaling the source, decoding a subsampled image where possible.
+     */
+    public static ImageNode create(ImageNode source, int width, int height) {
+        ImageNode scaledSource = source;
+
+        if (source instanceof DecodeNode && ((DecodeNode) source).getSubsampling() == 1) {
+            int subsampling = BufferedImageFactory.getSubsampling(
+                    new Dimension(source.getWidth(), source.getHeight()),
+                    new Dimension(width, height));
+            if (subsampling > 1) {
+                try {
+                    scaledSource = ((DecodeNode) source).subsample(subsampling);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to subsample " + source, e);
+                }
+            }
+        }
+
+        if (scaledSource.getWidth() == width && scaledSource.getHeight() == height) {
+            return scaledSource;
+        }
+
+        return new ScaleNode(scaledSource, width, height);
+    }
+
+    public ImageNode getSource() {
+        return source;
+    }
+
+    @Override
+    protected BufferedImage computeRegion(Rectangle region) {
+        int sourceX0 = Math.max(0, (int) Math.floor(region.x * scaleX) - MARGIN);
+        int sourceY0 = Math.max(0, (int) Math.floor(region.y * scaleY) - MARGIN);
+        int sourceX1 = Math.min(source.getWidth(), (int) Math.ceil((region.x + region.width) * scaleX) + MARGIN);
+        int sourceY1 = Math.min(source.getHeight(), (int) Math.ceil((region.y + region.height) * scaleY) + MARGIN);
+        BufferedImage sourceRegion = source.getRegion(new Rectangle(sourceX0, sourceY0, sourceX1 - sourceX0, sourceY1 - sourceY0));
+
+        BufferedImage result = new BufferedImage(region.width, region.height, getImageType());
+        Graphics2D graphics = result.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        AffineTransform transform = AffineTransform.getTranslateInstance(sourceX0 / scaleX - region.x, sourceY0 / scaleY - region.y);
+        transform.scale(1.0 / scaleX, 1.0 / scaleY);
+        graphics.drawRenderedImage(sourceRegion, transform);
+        graphics.dispose();
+        return result;
+    }
+}
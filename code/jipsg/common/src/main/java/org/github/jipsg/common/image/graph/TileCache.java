@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.graph;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of the tiles computed by the nodes of an image graph. The
+ * cache is bounded by the number of bytes of the cached tiles, so a consumer
+ * pulling an image row by row keeps the current row of tiles of every node
+ * while tiles which are not needed any more are evicted.
+ */
+public class TileCache {
+
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final TileCache instance = new TileCache(Math.min(DEFAULT_MAX_BYTES, Runtime.getRuntime().maxMemory() / 8));
+
+    private final long maxBytes;
+    private final Map<Key, BufferedImage> entries = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param maxBytes the maximum number of bytes of the cached tiles
+     */
+    public TileCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of bytes : " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the cache shared by the whole JVM.
+     */
+    public static TileCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get a cached tile.
+     *
+     * @return the tile or null if it is not cached
+     */
+    public BufferedImage get(ImageNode imageNode, int tileX, int tileY) {
+        BufferedImage result;
+
+        synchronized (entries) {
+            result = entries.get(new Key(imageNode, tileX, tileY));
+        }
+
+        if (result != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+
+        return result;
+    }
+
+    /**
+     * Cache a tile and evict the least recently used tiles exceeding the limit.
+     */
+    public void put(ImageNode imageNode, int tileX, int tileY, BufferedImage tile) {
+        synchronized (entries) {
+            BufferedImage previous = entries.put(new Key(imageNode, tileX, tileY), tile);
+            bytes += getBytes(tile) - (previous != null ? getBytes(previous) : 0);
+
+            Iterator<BufferedImage> iterator = entries.values().iterator();
+            while (bytes > maxBytes && iterator.hasNext()) {
+                BufferedImage eldest = iterator.next();
+                if (eldest != tile) {
+                    bytes -= getBytes(eldest);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all tiles of the given node.
+     */
+    public void remove(ImageNode imageNode) {
+        synchronized (entries) {
+            Iterator<Map.Entry<Key, BufferedImage>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, BufferedImage> entry = iterator.next();
+                if (entry.getKey().imageNode == imageNode) {
+                    bytes -= getBytes(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * The number of bytes of the cached tiles.
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TileCache{" +
+                "maxBytes=" + maxBytes +
+                ", bytes=" + getBytes() +
+                ", size=" + size() +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                '}';
+    }
+
+    private static long getBytes(BufferedImage tile) {
+        DataBuffer dataBuffer = tile.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks() * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    private static class Key {
+
+        private final ImageNode imageNode;
+        private final int tileX;
+        private final int tileY;
+
+        Key(ImageNode imageNode, int tileX, int tileY) {
+            this.imageNode = imageNode;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return imageNode == key.imageNode && tileX == key.tileX && tileY == key.tileY;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(imageNode) + tileX) + tileY;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.io;
+
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageReaderWriterSpi;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.spi.ServiceRegistry;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe pool of ImageReader and ImageWriter instances keyed by their
+ * service provider, i.e. by format and implementation. Looking up a reader or
+ * writer in the IIORegistry and setting up a native codec (e.g. the JDK's JPEG
+ * codec) is a measurable cost when processing lots of small images.
+ * <p>
+ * Borrowed instances must be returned - they are <code>reset()</code> before
+ * going back to the pool and disposed if the pool for their provider is full.
+ */
+public class ImageCodecPool {
+
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    private static final ImageCodecPool instance = new ImageCodecPool(DEFAULT_MAX_IDLE);
+
+    private final int maxIdle;
+    private final ConcurrentMap<ImageReaderSpi, BlockingQueue<ImageReader>> imageReaders = new ConcurrentHashMap<ImageReaderSpi, BlockingQueue<ImageReader>>();
+    private final ConcurrentMap<ImageWriterSpi, BlockingQueue<ImageWriter>> imageWriters = new ConcurrentHashMap<ImageWriterSpi, BlockingQueue<ImageWriter>>();
+    private final ConcurrentMap<String, ImageReaderSpi> imageReaderSpis = new ConcurrentHashMap<String, ImageReaderSpi>();
+    private final ConcurrentMap<String, ImageWriterSpi> imageWriterSpis = new ConcurrentHashMap<String, ImageWriterSpi>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
+    private final AtomicLong disposals = new AtomicLong();
+    private volatile ImageReaderRoutingTable imageReaderRoutingTable = new ImageReaderRoutingTable();
+
+    /**
+     * Constructor.
+     *
+     * @param maxIdle maximum number of idle instances kept per service provider
+     */
+    public ImageCodecPool(int maxIdle) {
+        if (maxIdle <= 0) {
+            throw new IllegalArgumentException("Invalid maximum number of idle instances : " + maxIdle);
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Get the pool shared by the whole JVM.
+     */
+    public static ImageCodecPool getInstance() {
+        return instance;
+    }
+
+    public ImageReaderRoutingTable getImageReaderRoutingTable() {
+        return imageReaderRoutingTable;
+    }
+
+    /**
+     * Set the routing table used to pick the image reader for an input.
+     */
+    public void setImageReaderRoutingTable(ImageReaderRoutingTable imageReaderRoutingTable) {
+        this.imageReaderRoutingTable = imageReaderRoutingTable;
+    }
+
+    /**
+     * Borrow an image reader being able to decode the given input - the reader
+     * is picked by the magic bytes of the input using the routing table.
+     *
+     * @param imageInputStream the input to decode
+     * @return the image reader or null if no reader was found
+     */
+    public ImageReader borrowReader(ImageInputStream imageInputStream) throws IOException {
+        ImageReaderSpi imageReaderSpi = imageReaderRoutingTable.findImageReaderSpi(imageInputStream);
+        return imageReaderSpi != null ? borrowReader(imageReaderSpi) : null;
+    }
+
+    /**
+     * Borrow an image reader for the informal format name, e.g. "jpeg".
+     *
+     * @param formatName the format name
+     * @return the image reader or null if no reader was found
+     */
+    public ImageReader borrowReader(String formatName) throws IOException {
+        ImageReaderSpi imageReaderSpi = imageReaderSpis.get(formatName);
+
+        if (imageReaderSpi == null) {
+            imageReaderSpi = findServiceProvider(ImageReaderSpi.class, formatName);
+            if (imageReaderSpi == null) {
+                return null;
+            }
+            imageReaderSpis.putIfAbsent(formatName, imageReaderSpi);
+        }
+
+        return borrowReader(imageReaderSpi);
+    }
+
+    public ImageReader borrowReader(ImageReaderSpi imageReaderSpi) throws IOException {
+        ImageReader result = getQueue(imageReaders, imageReaderSpi).poll();
+
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        creations.incrementAndGet();
+        return imageReaderSpi.createReaderInstance();
+    }
+
+    /**
+     * Reset the image reader and put it back into the pool.
+     */
+    public void returnReader(ImageReader imageReader) {
+        if (imageReader == null) {
+            return;
+        }
+
+        ImageReaderSpi imageReaderSpi = imageReader.getOriginatingProvider();
+        imageReader.reset();
+
+        if (imageReaderSpi == null || !getQueue(imageReaders, imageReaderSpi).offer(imageReader)) {
+            disposals.incrementAndGet();
+            imageReader.dispose();
+        }
+    }
+
+    /**
+     * Borrow an image writer for the informal format name or file suffix, e.g. "jpg".
+     *
+     * @param formatName the format name or file suffix
+     * @return the image writer or null if no writer was found
+     */
+    public ImageWriter borrowWriter(String formatName) throws IOException {
+        ImageWriterSpi imageWriterSpi = imageWriterSpis.get(formatName);
+
+        if (imageWriterSpi == null) {
+            imageWriterSpi = findServiceProvider(ImageWriterSpi.class, formatName);
+            if (imageWriterSpi == null) {
+                return null;
+            }
+            imageWriterSpis.putIfAbsent(formatName, imageWriterSpi);
+        }
+
+        return borrowWriter(imageWriterSpi);
+    }
+
+    public ImageWriter borrowWriter(ImageWriterSpi imageWriterSpi) throws IOException {
+        ImageWriter result = getQueue(imageWriters, imageWriterSpi).poll();
+
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        creations.incrementAndGet();
+        return imageWriterSpi.createWriterInstance();
+    }
+
+    /**
+     * Reset the image writer and put it back into the pool.
+     */
+    public void returnWriter(ImageWriter imageWriter) {
+        if (imageWriter == null) {
+            return;
+        }
+
+        ImageWriterSpi imageWriterSpi = imageWriter.getOriginatingProvider();
+        imageWriter.reset();
+
+        if (imageWriterSpi == null || !getQueue(imageWriters, imageWriterSpi).offer(imageWriter)) {
+            disposals.incrementAndGet();
+            imageWriter.dispose();
+        }
+    }
+
+    /**
+     * Number of borrowed instances taken from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of borrowed instances which had to be created.
+     */
+    public long getCreations() {
+        return creations.get();
+    }
+
+    /**
+     * Number of returned instances which were disposed since the pool was full.
+     */
+    public long getDisposals() {
+        return disposals.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ImageCodecPool{" +
+                "maxIdle=" + maxIdle +
+                ", hits=" + getHits() +
+                ", creations=" + getCreations() +
+                ", disposals=" + getDisposals() +
+                '}';
+    }
+
+    /**
+     * Find the first registered provider supporting the format name or file suffix.
+     */
+    static <T extends ImageReaderWriterSpi> T findServiceProvider(Class<T> category, final String formatName) {
+        Iterator<T> iterator = IIORegistry.getDefaultInstance().getServiceProviders(category, new ServiceRegistry.Filter() {
+            public boolean filter(Object provider) {
+                ImageReaderWriterSpi imageReaderWriterSpi = (ImageReaderWriterSpi) provider;
+                return contains(imageReaderWriterSpi.getFormatNames(), formatName)
+                        || contains(imageReaderWriterSpi.getFileSuffixes(), formatName);
+            }
+        }, true);
+
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private static boolean contains(String[] names, String name) {
+        if (names != null) {
+            for (String current : names) {
+                if (current.equalsIgnoreCase(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private <K, V> BlockingQueue<V> getQueue(ConcurrentMap<K, BlockingQueue<V>> queues, K key) {
+        BlockingQueue<V> result = queues.get(key);
+
+        if (result == null) {
+            BlockingQueue<V> queue = new ArrayBlockingQueue<V>(maxIdle);
+            result = queues.putIfAbsent(key, queue);
+            if (result == null) {
+                result = queue;
+            }
+        }
+
+        return result;
+    }
+}
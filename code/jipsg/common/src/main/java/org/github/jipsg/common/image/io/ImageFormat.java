@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.io;
+
+/**
+ * Image formats being recognized by their leading "magic" bytes.
+ */
+public enum ImageFormat {
+
+    JPEG("jpeg"),
+    PNG("png"),
+    GIF("gif"),
+    TIFF("tiff"),
+    BMP("bmp"),
+    JPEG2000("jpeg2000"),
+    JBIG2("jbig2"),
+    PDF("pdf"),
+    UNKNOWN(null);
+
+    private final String formatName;
+
+    ImageFormat(String formatName) {
+        this.formatName = formatName;
+    }
+
+    /**
+     * The informal format name as used by ImageIO, e.g. "jpeg".
+     */
+    public String getFormatName() {
+        return formatName;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.io;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Detects the image format from the first bytes of an image without asking every
+ * registered <code>ImageReaderSpi</code> whether it can decode the input.
+ */
+public class ImageFormatDetector {
+
+    /** Number of bytes being inspected */
+    public static final int HEADER_LENGTH = 32;
+
+    private static final byte[] JPEG = bytes(0xFF, 0xD8, 0xFF);
+    private static final byte[] PNG = bytes(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A);
+    private static final byte[] GIF87A = bytes('G', 'I', 'F', '8', '7', 'a');
+    private static final byte[] GIF89A = bytes('G', 'I', 'F', '8', '9', 'a');
+    private static final byte[] TIFF_LITTLE_ENDIAN = bytes('I', 'I', 0x2A, 0x00);
+    private static final byte[] TIFF_BIG_ENDIAN = bytes('M', 'M', 0x00, 0x2A);
+    private static final byte[] BIG_TIFF_LITTLE_ENDIAN = bytes('I', 'I', 0x2B, 0x00);
+    private static final byte[] BIG_TIFF_BIG_ENDIAN = bytes('M', 'M', 0x00, 0x2B);
+    private static final byte[] BMP = bytes('B', 'M');
+    private static final byte[] JP2 = bytes(0x00, 0x00, 0x00, 0x0C, 'j', 'P', ' ', ' ', 0x0D, 0x0A, 0x87, 0x0A);
+    private static final byte[] J2K = bytes(0xFF, 0x4F, 0xFF, 0x51);
+    private static final byte[] JBIG2 = bytes(0x97, 'J', 'B', '2', 0x0D, 0x0A, 0x1A, 0x0A);
+    private static final byte[] PDF = bytes('%', 'P', 'D', 'F', '-');
+
+    /**
+     * Detect the image format of a local file.
+     */
+    public static ImageFormat detect(File file) throws IOException {
+
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+        InputStream inputStream = new FileInputStream(file);
+
+        try {
+            while (length < header.length) {
+                int count = inputStream.read(header, length, header.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return detect(header, length);
+    }
+
+    /**
+     * Detect the image format by peeking at the start of the stream - the stream
+     * position is restored afterwards.
+     */
+    public static ImageFormat detect(ImageInputStream imageInputStream) throws IOException {
+
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+
+        imageInputStream.mark();
+
+        try {
+            while (length < header.length) {
+                int count = imageInputStream.read(header, length, header.length - length);
+                if (count < 0) {
+                    break;
+                }
+                length += count;
+            }
+        } finally {
+            imageInputStream.reset();
+        }
+
+        return detect(header, length);
+    }
+
+    /**
+     * Detect the image format from the leading bytes.
+     *
+     * @param header the leading bytes of the image
+     * @param length the number of valid bytes
+     * @return the image format or <code>ImageFormat.UNKNOWN</code>
+     */
+    public static ImageFormat detect(byte[] header, int length) {
+
+        if (startsWith(header, length, JPEG)) {
+            return ImageFormat.JPEG;
+        } else if (startsWith(header, length, PNG)) {
+            return ImageFormat.PNG;
+        } else if (startsWith(header, length, GIF87A) || startsWith(header, length, GIF89A)) {
+            return ImageFormat.GIF;
+        } else if (startsWith(header, length, TIFF_LITTLE_ENDIAN) || startsWith(header, length, TIFF_BIG_ENDIAN)
+                || startsWith(header, length, BIG_TIFF_LITTLE_ENDIAN) || startsWith(header, length, BIG_TIFF_BIG_ENDIAN)) {
+            return ImageFormat.TIFF;
+        } else if (startsWith(header, length, JP2) || startsWith(header, length, J2K)) {
+            return ImageFormat.JPEG2000;
+        } else if (startsWith(header, length, JBIG2)) {
+            return ImageFormat.JBIG2;
+        } else if (startsWith(header, length, PDF)) {
+            return ImageFormat.PDF;
+        } else if (startsWith(header, length, BMP)) {
+            return ImageFormat.BMP;
+        } else {
+            return ImageFormat.UNKNOWN;
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, byte[] signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
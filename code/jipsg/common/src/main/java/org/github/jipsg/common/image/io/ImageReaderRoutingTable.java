@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.io;
+
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps a detected image format straight to the preferred image reader provider.
+ * <p>
+ * Without a route ImageIO asks every registered provider whether it can decode
+ * the input which gets expensive with TwelveMonkeys, JAI ImageIO and friends on
+ * the classpath. By default a format is routed to the first registered provider
+ * supporting its format name (the same provider ImageIO would pick) - use
+ * {@link #setImageReaderSpi(ImageFormat, String)} to prefer another one. The full
+ * provider scan is only done for unknown formats or if the routed provider
+ * rejects the input.
+ */
+public class ImageReaderRoutingTable {
+
+    private final ConcurrentMap<ImageFormat, ImageReaderSpi> configuredRoutes = new ConcurrentHashMap<ImageFormat, ImageReaderSpi>();
+    private final ConcurrentMap<ImageFormat, ImageReaderSpi> defaultRoutes = new ConcurrentHashMap<ImageFormat, ImageReaderSpi>();
+
+    /**
+     * Route the image format to the given provider.
+     */
+    public void setImageReaderSpi(ImageFormat imageFormat, ImageReaderSpi imageReaderSpi) {
+        if (imageFormat == ImageFormat.UNKNOWN) {
+            throw new IllegalArgumentException("Can't route unknown image format");
+        }
+        configuredRoutes.put(imageFormat, imageReaderSpi);
+    }
+
+    /**
+     * Route the image format to the registered provider with the given class name,
+     * e.g. "com.twelvemonkeys.imageio.plugins.jpeg.JPEGImageReaderSpi".
+     */
+    public void setImageReaderSpi(ImageFormat imageFormat, String className) {
+        Iterator<ImageReaderSpi> iterator = IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, false);
+
+        while (iterator.hasNext()) {
+            ImageReaderSpi imageReaderSpi = iterator.next();
+            if (imageReaderSpi.getClass().getName().equals(className)) {
+                setImageReaderSpi(imageFormat, imageReaderSpi);
+                return;
+            }
+        }
+
+        throw new IllegalArgumentException("No image reader provider registered : " + className);
+    }
+
+    /**
+     * Remove the configured route and fall back to the default one.
+     */
+    public void removeImageReaderSpi(ImageFormat imageFormat) {
+        configuredRoutes.remove(imageFormat);
+    }
+
+    /**
+     * Get the provider the image format is routed to.
+     *
+     * @return the provider or null if no provider supports the image format
+     */
+    public ImageReaderSpi getImageReaderSpi(ImageFormat imageFormat) {
+        ImageReaderSpi result = configuredRoutes.get(imageFormat);
+
+        if (result == null && imageFormat != ImageFormat.UNKNOWN) {
+            result = defaultRoutes.get(imageFormat);
+            if (result == null) {
+                result = ImageCodecPool.findServiceProvider(ImageReaderSpi.class, imageFormat.getFormatName());
+                if (result != null) {
+                    defaultRoutes.putIfAbsent(imageFormat, result);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find the image reader provider for the input based on its leading bytes.
+     *
+     * @param imageInputStream the input to decode
+     * @return the provider or null if no registered provider can decode the input
+     */
+    public ImageReaderSpi findImageReaderSpi(ImageInputStream imageInputStream) throws IOException {
+        ImageReaderSpi result = getImageReaderSpi(ImageFormatDetector.detect(imageInputStream));
+        return result != null && canDecodeInput(result, imageInputStream) ? result : scanImageReaderSpis(imageInputStream);
+    }
+
+    /**
+     * Find the first registered image reader provider being able to decode the input -
+     * this is the same lookup as <code>ImageIO.getImageReaders()</code> but without
+     * creating a reader instance.
+     */
+    static ImageReaderSpi scanImageReaderSpis(ImageInputStream imageInputStream) throws IOException {
+        Iterator<ImageReaderSpi> iterator = IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, true);
+
+        while (iterator.hasNext()) {
+            ImageReaderSpi imageReaderSpi = iterator.next();
+            if (canDecodeInput(imageReaderSpi, imageInputStream)) {
+                return imageReaderSpi;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean canDecodeInput(ImageReaderSpi imageReaderSpi, ImageInputStream imageInputStream) throws IOException {
+        imageInputStream.mark();
+        try {
+            return imageReaderSpi.canDecodeInput(imageInputStream);
+        } finally {
+            imageInputStream.reset();
+        }
+    }
+}
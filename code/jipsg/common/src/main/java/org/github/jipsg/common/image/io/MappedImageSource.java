@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.io;
+
+import javax.imageio.IIOException;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A read-only memory mapping of a local image file. Every call of
+ * {@link #createImageInputStream()} returns an independent, seekable stream over
+ * the same mapping, so multiple readers can decode different pages of a large
+ * TIFF concurrently while sharing the page cache and avoiding a syscall per read.
+ * <p>
+ * Mappings are shared between callers as long as they are in use - the mapping
+ * is released by the garbage collector once no stream refers to it any more.
+ */
+public class MappedImageSource {
+
+    private static final Map<String, WeakReference<MappedImageSource>> mappedImageSources = new HashMap<String, WeakReference<MappedImageSource>>();
+
+    private final File file;
+    private final MappedByteBuffer mappedByteBuffer;
+
+    private MappedImageSource(File file) throws IOException {
+
+        long length = file.length();
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IIOException("File is too large to be mapped : " + file.getPath());
+        }
+
+        FileInputStream fileInputStream = new FileInputStream(file);
+
+        try {
+            // the mapping stays valid after the channel is closed
+            FileChannel fileChannel = fileInputStream.getChannel();
+            this.mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            this.file = file;
+        } finally {
+            fileInputStream.close();
+        }
+    }
+
+    /**
+     * Get the shared mapping of the given file - a new mapping is created if the file
+     * was not mapped before or was modified in the meantime.
+     *
+     * @param file the local file
+     * @return the mapped image source
+     */
+    public static MappedImageSource of(File file) throws IOException {
+
+        File canonicalFile = file.getCanonicalFile();
+
+        if (!canonicalFile.canRead()) {
+            throw new IIOException("Can't read input file : " + file.getPath());
+        }
+
+        String key = canonicalFile.getPath() + ":" + canonicalFile.length() + ":" + canonicalFile.lastModified();
+
+        synchronized (mappedImageSources) {
+            WeakReference<MappedImageSource> reference = mappedImageSources.get(key);
+            MappedImageSource result = reference != null ? reference.get() : null;
+
+            if (result == null) {
+                removeStaleEntries();
+                result = new MappedImageSource(canonicalFile);
+                mappedImageSources.put(key, new WeakReference<MappedImageSource>(result));
+            }
+
+            return result;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long length() {
+        return mappedByteBuffer.capacity();
+    }
+
+    /**
+     * Create a new stream over the mapping - the stream keeps the mapping alive.
+     */
+    public ImageInputStream createImageInputStream() {
+        return new MappedImageInputStream(this);
+    }
+
+    private static void removeStaleEntries() {
+        Iterator<WeakReference<MappedImageSource>> iterator = mappedImageSources.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Holds a strong reference to its source so that a shared mapping lives as long
+     * as any stream is reading from it.
+     */
+    private static class MappedImageInputStream extends ByteBufferImageInputStream {
+
+        private MappedImageSource mappedImageSource;
+
+        MappedImageInputStream(MappedImageSource mappedImageSource) {
+            super(mappedImageSource.mappedByteBuffer.duplicate());
+            this.mappedImageSource = mappedImageSource;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            mappedImageSource = null;
+        }
+    }
+}
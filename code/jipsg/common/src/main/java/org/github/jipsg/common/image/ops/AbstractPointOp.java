@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.ops;
+
+import org.github.jipsg.common.image.PixelAccess;
+
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+
+/**
+ * Base class of point operations running <code>filterRGB()</code> row by row
+ * over the raster.
+ */
+public abstract class AbstractPointOp implements PointOp {
+
+    public boolean discardsAlpha() {
+        return false;
+    }
+
+    /**
+     * Filter the source image - the destination may be the source image itself
+     * or null to create a compatible image.
+     */
+    public BufferedImage filter(BufferedImage src, BufferedImage dest) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage result = dest != null ? dest : createCompatibleDestImage(src, null);
+
+        if (result.getWidth() < width || result.getHeight() < height) {
+            throw new IllegalArgumentException("Destination image is too small : " + result.getWidth() + "x" + result.getHeight());
+        }
+
+        PixelAccess srcPixelAccess = PixelAccess.of(src);
+        PixelAccess destPixelAccess = result == src ? srcPixelAccess : PixelAccess.of(result);
+        int[] row = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            srcPixelAccess.getRGB(0, y, width, row, 0);
+            for (int x = 0; x < width; x++) {
+                row[x] = filterRGB(row[x]);
+            }
+            destPixelAccess.setRGB(0, y, width, row, 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Create an image of the source type for the plain RGB types, otherwise
+     * <code>TYPE_INT_ARGB</code> or <code>TYPE_INT_RGB</code>.
+     */
+    public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel destCM) {
+        return new BufferedImage(src.getWidth(), src.getHeight(), getDestImageType(src));
+    }
+
+    public Rectangle2D getBounds2D(BufferedImage src) {
+        return src.getRaster().getBounds();
+    }
+
+    public Point2D getPoint2D(Point2D srcPt, Point2D dstPt) {
+        if (dstPt == null) {
+            dstPt = new Point2D.Float();
+        }
+        dstPt.setLocation(srcPt);
+        return dstPt;
+    }
+
+    public RenderingHints getRenderingHints() {
+        return null;
+    }
+
+    protected int getDestImageType(BufferedImage src) {
+        if (discardsAlpha()) {
+            return BufferedImage.TYPE_INT_RGB;
+        }
+
+        switch (src.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                return src.getType();
+            default:
+                return src.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        }
+    }
+}
@@ -6,27 +6,48 @@ import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
 
-public class AlphaChannelImageOp implements BufferedImageOp {
+public class AlphaChannelImageOp implements PointOp {
 
     /**
      * Fill the alpha-channel with white pixels.
      */
     public BufferedImage filter(BufferedImage src, BufferedImage dest) {
-        BufferedImage result = new BufferedImage(src.getWidth(null), src.getHeight(null), BufferedImage.TYPE_INT_RGB);
+        BufferedImage result = dest != null ? dest : createCompatibleDestImage(src, null);
         Graphics2D g = result.createGraphics();
-        g.drawImage(src, 0, 0, result.getWidth(), result.getHeight(), Color.WHITE, null);
+        g.drawImage(src, 0, 0, src.getWidth(), src.getHeight(), Color.WHITE, null);
+        g.dispose();
         return result;
     }
 
+    /**
+     * Blend the pixel over white with the same rounding as Java2D's SrcOver compositing.
+     */
+    public int filterRGB(int argb) {
+        int alpha = argb >>> 24;
+
+        if (alpha == 0xFF) {
+            return argb;
+        }
+
+        int background = 255 * (255 - alpha) + 127;
+        int red = (((argb >> 16) & 0xFF) * alpha + background) / 255;
+        int green = (((argb >> 8) & 0xFF) * alpha + background) / 255;
+        int blue = ((argb & 0xFF) * alpha + background) / 255;
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    public boolean discardsAlpha() {
+        return true;
+    }
+
     public Rectangle2D getBounds2D(BufferedImage src) {
         return null;
     }
 
     public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel destCM) {
-        return null;
+        return new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
     }
 
     public Point2D getPoint2D(Point2D srcPt, Point2D dstPt) {
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.ops;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chains point operations so that they are applied in a single pass.
+ */
+public class FusedPointOp extends AbstractPointOp {
+
+    private final PointOp[] pointOps;
+    private final boolean[] opaqueAfter;
+    private final boolean discardsAlpha;
+
+    public FusedPointOp(List<? extends PointOp> pointOps) {
+        this.pointOps = new ArrayList<PointOp>(pointOps).toArray(new PointOp[0]);
+        this.opaqueAfter = new boolean[this.pointOps.length];
+
+        boolean opaque = false;
+        for (int i = 0; i < this.pointOps.length; i++) {
+            opaque |= this.pointOps[i].discardsAlpha();
+            opaqueAfter[i] = this.pointOps[i].discardsAlpha();
+        }
+        this.discardsAlpha = opaque;
+    }
+
+    public int size() {
+        return pointOps.length;
+    }
+
+    @Override
+    public boolean discardsAlpha() {
+        return discardsAlpha;
+    }
+
+    public int filterRGB(int argb) {
+        int result = argb;
+        for (int i = 0; i < pointOps.length; i++) {
+            result = pointOps[i].filterRGB(result);
+            if (opaqueAfter[i]) {
+                // the following operation would have seen an opaque TYPE_INT_RGB image
+                result |= 0xFF000000;
+            }
+        }
+        return result;
+    }
+}
@@ -4,15 +4,26 @@ import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
 import java.awt.image.RescaleOp;
 
-public class InvertImageOp implements BufferedImageOp {
+public class InvertImageOp implements PointOp {
+
+    private final RescaleOp rescaleOp = new RescaleOp(-1.0f, 255f, null);
 
     public BufferedImage filter(BufferedImage src, BufferedImage dest) {
-        RescaleOp op = new RescaleOp(-1.0f, 255f, null);
-        return op.filter(src, dest);
+        return rescaleOp.filter(src, dest);
+    }
+
+    /**
+     * Invert the color channels and keep the alpha channel as the RescaleOp does.
+     */
+    public int filterRGB(int argb) {
+        return argb ^ 0x00FFFFFF;
+    }
+
+    public boolean discardsAlpha() {
+        return false;
     }
 
     public Rectangle2D getBounds2D(BufferedImage src) {
@@ -20,7 +31,7 @@ public class InvertImageOp implements BufferedImageOp {
     }
 
     public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel destCM) {
-        return null;
+        return rescaleOp.createCompatibleDestImage(src, destCM);
     }
 
     public Point2D getPoint2D(Point2D srcPt, Point2D dstPt) {
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.ops;
+
+/**
+ * Maps the red, green and blue channel through lookup tables with 256 entries
+ * while keeping the alpha channel - covers rescaling, levels and arbitrary curves.
+ */
+public class LookupPointOp extends AbstractPointOp {
+
+    private final int[] redTable;
+    private final int[] greenTable;
+    private final int[] blueTable;
+
+    /**
+     * Constructor using the same table for all color channels.
+     */
+    public LookupPointOp(int[] table) {
+        this(table, table, table);
+    }
+
+    public LookupPointOp(int[] redTable, int[] greenTable, int[] blueTable) {
+        this.redTable = checkTable(redTable);
+        this.greenTable = checkTable(greenTable);
+        this.blueTable = checkTable(blueTable);
+    }
+
+    /**
+     * Create an operation computing "value * scale + offset" for every color channel.
+     */
+    public static LookupPointOp rescale(float scale, float offset) {
+        int[] table = new int[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = clamp(Math.round(i * scale + offset));
+        }
+        return new LookupPointOp(table);
+    }
+
+    /**
+     * Create an operation stretching the input range [black, white] to [0, 255].
+     */
+    public static LookupPointOp levels(int black, int white) {
+        if (black < 0 || white > 255 || black >= white) {
+            throw new IllegalArgumentException("Invalid levels : " + black + " - " + white);
+        }
+        return rescale(255.0f / (white - black), -black * 255.0f / (white - black));
+    }
+
+    public int filterRGB(int argb) {
+        return (argb & 0xFF000000)
+                | (redTable[(argb >> 16) & 0xFF] << 16)
+                | (greenTable[(argb >> 8) & 0xFF] << 8)
+                | blueTable[argb & 0xFF];
+    }
+
+    private static int[] checkTable(int[] table) {
+        if (table == null || table.length != 256) {
+            throw new IllegalArgumentException("Lookup table must have 256 entries");
+        }
+        for (int value : table) {
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("Invalid lookup table value : " + value);
+            }
+        }
+        return table.clone();
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.ops;
+
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs an image operation in parallel by splitting the image into horizontal
+ * bands which are filtered on the common ForkJoin pool and written into a
+ * single destination image.
+ * <p>
+ * Only local operations are supported, i.e. operations where a resulting pixel
+ * depends on the source pixels within a distance of <code>halo</code> rows. Every
+ * band is filtered together with its <code>halo</code> rows above and below and
+ * only its own rows are copied into the destination. Point operations are
+ * written directly into the destination. Operations not providing a compatible
+ * destination image (e.g. an operation computing statistics over the whole
+ * image) are run on the calling thread over the whole image.
+ */
+public class ParallelImageOp implements BufferedImageOp {
+
+    private final BufferedImageOp bufferedImageOp;
+    private final int halo;
+    private final ForkJoinPool forkJoinPool;
+
+    /**
+     * Constructor for point operations and a <code>ConvolveOp</code> whose halo is
+     * derived from its kernel - other operations need an explicit halo.
+     *
+     * @throws IllegalArgumentException the halo of the operation is not known
+     */
+    public ParallelImageOp(BufferedImageOp bufferedImageOp) {
+        this(bufferedImageOp, getDefaultHalo(bufferedImageOp));
+    }
+
+    public ParallelImageOp(BufferedImageOp bufferedImageOp, int halo) {
+        this(bufferedImageOp, halo, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param bufferedImageOp the local image operation
+     * @param halo            the number of neighbouring rows a resulting row depends on
+     * @param forkJoinPool    the pool filtering the bands
+     */
+    public ParallelImageOp(BufferedImageOp bufferedImageOp, int halo, ForkJoinPool forkJoinPool) {
+        if (bufferedImageOp == null) {
+            throw new IllegalArgumentException("No image operation given");
+        }
+        if (halo < 0) {
+            throw new IllegalArgumentException("Invalid halo : " + halo);
+        }
+        this.bufferedImageOp = bufferedImageOp;
+        this.halo = halo;
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public BufferedImageOp getBufferedImageOp() {
+        return bufferedImageOp;
+    }
+
+    public int getHalo() {
+        return halo;
+    }
+
+    public BufferedImage filter(final BufferedImage src, BufferedImage dest) {
+        final BufferedImage result = dest != null ? dest : bufferedImageOp.createCompatibleDestImage(src, null);
+
+        if (result == null) {
+            return bufferedImageOp.filter(src, null);
+        }
+
+        final int width = src.getWidth();
+        final int height = src.getHeight();
+        final boolean isDirect = halo == 0 && bufferedImageOp instanceof PointOp;
+
+        RowBands.process(height, Math.max(RowBands.DEFAULT_MIN_BAND_HEIGHT, 4 * halo), new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                if (isDirect) {
+                    bufferedImageOp.filter(
+                            src.getSubimage(0, minY, width, maxY - minY),
+                            result.getSubimage(0, minY, width, maxY - minY));
+                } else {
+                    int haloMinY = Math.max(0, minY - halo);
+                    int haloMaxY = Math.min(height, maxY + halo);
+                    BufferedImage band = bufferedImageOp.filter(src.getSubimage(0, haloMinY, width, haloMaxY - haloMinY), null);
+                    copyRows(band, minY - haloMinY, result, minY, maxY - minY);
+                }
+            }
+        }, forkJoinPool);
+
+        return result;
+    }
+
+    public Rectangle2D getBounds2D(BufferedImage src) {
+        return bufferedImageOp.getBounds2D(src);
+    }
+
+    public BufferedImage createCompatibleDestImage(BufferedImage src, ColorModel destCM) {
+        return bufferedImageOp.createCompatibleDestImage(src, destCM);
+    }
+
+    public Point2D getPoint2D(Point2D srcPt, Point2D dstPt) {
+        return bufferedImageOp.getPoint2D(srcPt, dstPt);
+    }
+
+    public RenderingHints getRenderingHints() {
+        return bufferedImageOp.getRenderingHints();
+    }
+
+    /**
+     * Copy the rows of a filtered band into the destination image.
+     */
+    private static void copyRows(BufferedImage band, int bandY, BufferedImage dest, int destY, int rows) {
+        int width = Math.min(band.getWidth(), dest.getWidth());
+
+        if (band.getColorModel().equals(dest.getColorModel())
+                && band.getSampleModel().getTransferType() == dest.getSampleModel().getTransferType()) {
+            dest.getRaster().setDataElements(0, destY, band.getRaster().createChild(0, bandY, width, rows, 0, 0, null));
+        } else {
+            PixelAccess bandPixelAccess = PixelAccess.of(band);
+            PixelAccess destPixelAccess = PixelAccess.of(dest);
+            int[] row = new int[width];
+            for (int y = 0; y < rows; y++) {
+                bandPixelAccess.getRGB(0, bandY + y, width, row, 0);
+                destPixelAccess.setRGB(0, destY + y, width, row, 0);
+            }
+        }
+    }
+
+    /**
+     * Get the halo of a <code>ConvolveOp</code> derived from its kernel or 0 for a
+     * <code>PointOp</code>.
+     *
+     * @throws IllegalArgumentException the halo of the operation is not known
+     */
+    public static int getDefaultHalo(BufferedImageOp bufferedImageOp) {
+        if (bufferedImageOp instanceof ConvolveOp) {
+            Kernel kernel = ((ConvolveOp) bufferedImageOp).getKernel();
+            return Math.max(kernel.getYOrigin(), kernel.getHeight() - 1 - kernel.getYOrigin());
+        } else if (bufferedImageOp instanceof PointOp) {
+            return 0;
+        } else if (bufferedImageOp == null) {
+            throw new IllegalArgumentException("No image operation given");
+        }
+        throw new IllegalArgumentException("Unknown halo of image operation : " + bufferedImageOp.getClass().getName());
+    }
+}
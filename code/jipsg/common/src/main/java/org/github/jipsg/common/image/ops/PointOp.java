@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.github.jipsg.common.image.ops;
+
+import java.awt.image.BufferedImageOp;
+
+/**
+ * An image operation where every resulting pixel depends only on the source
+ * pixel at the same position, e.g. inverting, rescaling or a lookup table.
+ * <p>
+ * Consecutive point operations are fused by
+ * {@link org.github.jipsg.common.image.BufferedImageOperations#apply(java.awt.image.BufferedImage, BufferedImageOp...)}
+ * into a single pass over the raster without intermediate images.
+ */
+public interface PointOp extends BufferedImageOp {
+
+    /**
+     * Map a single non-premultiplied sRGB pixel.
+     *
+     * @param argb the source pixel
+     * @return the resulting pixel
+     */
+    int filterRGB(int argb);
+
+    /**
+     * Does the operation produce an opaque <code>TYPE_INT_RGB</code> image?
+     */
+    boolean discardsAlpha();
+}
@@ -1,15 +1,47 @@
 package org.github.jipsg.image.comparison;
 
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Compare two images to check if they are identical - based on Apache PDFBox.
  * See https://github.com/sgoeschl/java-image-processing-survival-guide/raw/master/slides/jipsg.pdf
  */
-public class IdenticalImageComparator {
+public class IdenticalImageComparator implements ImageComparator {
+
+    // don't bother about differences of 1 color step
+    private ImageMetrics imageMetrics = new ImageMetrics(1);
+
+    public ImageMetrics getImageMetrics() {
+        return imageMetrics;
+    }
+
+    public void setImageMetrics(ImageMetrics imageMetrics) {
+        this.imageMetrics = imageMetrics;
+    }
+
+    /**
+     * Compare the images using the image metrics, the diff image is the one of
+     * <code>diffImages</code>.
+     */
+    public ImageComparisonResult compareImages(BufferedImage bim1, BufferedImage bim2) {
+        ImageComparisonResult result = imageMetrics.compare(bim1, bim2);
+        if (!result.isIdentical()) {
+            result.setDiffImage(createDiffImage(bim1, bim2));
+        }
+        return result;
+    }
 
     /**
      * Get the difference between two images, identical colors are set to white,
@@ -24,38 +56,281 @@ public class IdenticalImageComparator {
      * @throws IOException
      */
     public BufferedImage diffImages(BufferedImage bim1, BufferedImage bim2) throws IOException {
-        int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
-        int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
-        int maxWidth = Math.max(bim1.getWidth(), bim2.getWidth());
-        int maxHeight = Math.max(bim1.getHeight(), bim2.getHeight());
-        BufferedImage bim3 = null;
+        return createDiffImage(bim1, bim2);
+    }
+
+    private BufferedImage createDiffImage(final BufferedImage bim1, final BufferedImage bim2) {
+        final int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        final int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        final int maxWidth = Math.max(bim1.getWidth(), bim2.getWidth());
+        final int maxHeight = Math.max(bim1.getHeight(), bim2.getHeight());
+        final AtomicReference<BufferedImage> bim3 = new AtomicReference<BufferedImage>();
         if (minWidth != maxWidth || minHeight != maxHeight) {
-            bim3 = createEmptyDiffImage(minWidth, minHeight, maxWidth, maxHeight);
+            bim3.set(createEmptyDiffImage(minWidth, minHeight, maxWidth, maxHeight));
         }
-        for (int x = 0; x < minWidth; ++x) {
-            for (int y = 0; y < minHeight; ++y) {
-                int rgb1 = bim1.getRGB(x, y);
-                int rgb2 = bim2.getRGB(x, y);
-                if (rgb1 != rgb2
+        // scan row by row in parallel bands using the raster directly instead of two getRGB() calls per pixel
+        final PixelAccess pixelAccess1 = PixelAccess.of(bim1);
+        final PixelAccess pixelAccess2 = PixelAccess.of(bim2);
+        RowBands.process(minHeight, new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                int[] row1 = new int[minWidth];
+                int[] row2 = new int[minWidth];
+                int[] diffRow = new int[minWidth];
+                Arrays.fill(diffRow, Color.WHITE.getRGB());
+                PixelAccess pixelAccess3 = null;
+                for (int y = minY; y < maxY; ++y) {
+                    pixelAccess1.getRGB(0, y, minWidth, row1, 0);
+                    pixelAccess2.getRGB(0, y, minWidth, row2, 0);
+                    boolean rowChanged = false;
+                    for (int x = 0; x < minWidth; ++x) {
+                        int rgb1 = row1[x];
+                        int rgb2 = row2[x];
                         // don't bother about differences of 1 color step
-                        && (Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF)) > 1
-                        || Math.abs(((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF)) > 1
-                        || Math.abs(((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF)) > 1)) {
-                    if (bim3 == null) {
-                        bim3 = createEmptyDiffImage(minWidth, minHeight, maxWidth, maxHeight);
+                        if (rgb1 != rgb2 && isDifferent(rgb1, rgb2, 1)) {
+                            int r = Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF));
+                            int g = Math.abs((rgb1 & 0xFF00) - (rgb2 & 0xFF00));
+                            int b = Math.abs((rgb1 & 0xFF0000) - (rgb2 & 0xFF0000));
+                            diffRow[x] = 0xFFFFFF - (r | g | b);
+                            rowChanged = true;
+                        }
                     }
-                    int r = Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF));
-                    int g = Math.abs((rgb1 & 0xFF00) - (rgb2 & 0xFF00));
-                    int b = Math.abs((rgb1 & 0xFF0000) - (rgb2 & 0xFF0000));
-                    bim3.setRGB(x, y, 0xFFFFFF - (r | g | b));
-                } else {
-                    if (bim3 != null) {
-                        bim3.setRGB(x, y, Color.WHITE.getRGB());
+                    if (rowChanged) {
+                        // the diff image is white where the images are identical
+                        if (pixelAccess3 == null) {
+                            pixelAccess3 = PixelAccess.of(getDiffImage(bim3, minWidth, minHeight, maxWidth, maxHeight));
+                        }
+                        pixelAccess3.setRGB(0, y, minWidth, diffRow, 0);
+                        Arrays.fill(diffRow, Color.WHITE.getRGB());
                     }
                 }
             }
+        });
+        return bim3.get();
+    }
+
+    /**
+     * Check if two images have the same size and no color differs by more than
+     * the tolerance - in contrast to <code>diffImages</code> no diff image is
+     * created and the scan stops at the first difference.
+     * <code>identical(bim1, bim2, 1)</code> is true whenever
+     * <code>diffImages(bim1, bim2)</code> returns null.
+     *
+     * @param bim1      the first image
+     * @param bim2      the second image
+     * @param tolerance the allowed difference of the red, green and blue values
+     * @return true if the images are identical within the tolerance
+     */
+    public boolean identical(BufferedImage bim1, BufferedImage bim2, final int tolerance) {
+        if (bim1.getWidth() != bim2.getWidth() || bim1.getHeight() != bim2.getHeight()) {
+            return false;
+        }
+        final int width = bim1.getWidth();
+        final PixelAccess pixelAccess1 = PixelAccess.of(bim1);
+        final PixelAccess pixelAccess2 = PixelAccess.of(bim2);
+        final AtomicBoolean different = new AtomicBoolean();
+        RowBands.process(bim1.getHeight(), new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                int[] row1 = new int[width];
+                int[] row2 = new int[width];
+                // other bands stop as soon as one band found a difference
+                for (int y = minY; y < maxY && !different.get(); ++y) {
+                    pixelAccess1.getRGB(0, y, width, row1, 0);
+                    pixelAccess2.getRGB(0, y, width, row2, 0);
+                    for (int x = 0; x < width; ++x) {
+                        if (row1[x] != row2[x] && isDifferent(row1[x], row2[x], tolerance)) {
+                            different.set(true);
+                            return;
+                        }
+                    }
+                }
+            }
+        });
+        return !different.get();
+    }
+
+    /**
+     * Check if two images are identical within the tolerance by comparing their
+     * pyramids from the coarsest to the finest level, only the blocks the pyramids
+     * can't decide are compared pixel by pixel.
+     * <p>
+     * Building a pyramid reads the whole image and costs more than the scan of
+     * <code>identical(bim1, bim2, tolerance)</code>, so does building one pyramid
+     * per comparison. The comparison of two pyramids only reads the pixels of ambiguous
+     * blocks, e.g. the text of a page - keep the pyramids of images being compared
+     * several times, e.g. the pages of a document compared with those of its
+     * previous versions.
+     *
+     * @param bim1      the first image
+     * @param pyramid1  the pyramid of the first image
+     * @param bim2      the second image
+     * @param pyramid2  the pyramid of the second image
+     * @param tolerance the allowed difference of the red, green and blue values
+     * @return true if the images are identical within the tolerance
+     */
+    public boolean identical(BufferedImage bim1, ImagePyramid pyramid1, BufferedImage bim2, ImagePyramid pyramid2, int tolerance) {
+        return new MultiResolutionImageComparator(tolerance).identical(bim1, pyramid1, bim2, pyramid2);
+    }
+
+    /**
+     * Find the regions where the images differ by more than the tolerance of the
+     * image metrics without creating a diff image.
+     *
+     * @param bim1 the expected image
+     * @param bim2 the actual image
+     * @return the bounding boxes of the changes
+     */
+    public List<Rectangle> findChangedRegions(BufferedImage bim1, BufferedImage bim2) {
+        return findChangedRegions(bim1, TileSignature.of(bim1), bim2);
+    }
+
+    /**
+     * Find the regions where the images differ by more than the tolerance of the
+     * image metrics without creating a diff image - only the tiles whose hashes
+     * differ are compared pixel by pixel and adjacent changed tiles are merged into
+     * the bounding box of their changed pixels. The area not covered by the smaller
+     * image is returned as changed.
+     * <p>
+     * Hashing a page costs about a tenth of <code>diffImages</code>, hashing both
+     * pages for every comparison only saves about 4x - keep the signature of the
+     * reference page to get the full benefit.
+     *
+     * @param bim1       the expected image
+     * @param signature1 the signature of the expected image, e.g. kept from a previous comparison
+     * @param bim2       the actual image
+     * @return the bounding boxes of the changes
+     */
+    public List<Rectangle> findChangedRegions(BufferedImage bim1, TileSignature signature1, BufferedImage bim2) {
+        final int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        final int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        final int maxWidth = Math.max(bim1.getWidth(), bim2.getWidth());
+        final int maxHeight = Math.max(bim1.getHeight(), bim2.getHeight());
+        final int tileSize = signature1.getTileSize();
+        final int columns = (minWidth + tileSize - 1) / tileSize;
+        final int rows = (minHeight + tileSize - 1) / tileSize;
+        final int tolerance = imageMetrics.getTolerance();
+
+        final boolean[] dirtyTiles;
+        if (minWidth == maxWidth && minHeight == maxHeight) {
+            dirtyTiles = signature1.getDirtyTiles(TileSignature.of(bim2, tileSize));
+        } else {
+            dirtyTiles = new boolean[columns * rows];
+            Arrays.fill(dirtyTiles, true);
+        }
+
+        // compare the pixels of the dirty tiles and keep the bounding box of their changes
+        final Rectangle[] changedTiles = new Rectangle[columns * rows];
+        final PixelAccess pixelAccess1 = PixelAccess.of(bim1);
+        final PixelAccess pixelAccess2 = PixelAccess.of(bim2);
+        RowBands.process(rows, 1, new RowBands.Task() {
+            public void process(int minRow, int maxRow) {
+                int[] row1 = new int[tileSize];
+                int[] row2 = new int[tileSize];
+                for (int row = minRow; row < maxRow; row++) {
+                    for (int column = 0; column < columns; column++) {
+                        if (!dirtyTiles[row * columns + column]) {
+                            continue;
+                        }
+                        int minX = column * tileSize;
+                        int minY = row * tileSize;
+                        int tileWidth = Math.min(minWidth, minX + tileSize) - minX;
+                        int maxY = Math.min(minHeight, minY + tileSize);
+                        int minChangedX = Integer.MAX_VALUE;
+                        int maxChangedX = -1;
+                        int minChangedY = -1;
+                        int maxChangedY = -1;
+                        for (int y = minY; y < maxY; y++) {
+                            pixelAccess1.getRGB(minX, y, tileWidth, row1, 0);
+                            pixelAccess2.getRGB(minX, y, tileWidth, row2, 0);
+                            for (int x = 0; x < tileWidth; x++) {
+                                if (row1[x] != row2[x] && isDifferent(row1[x], row2[x], tolerance)) {
+                                    minChangedX = Math.min(minChangedX, x);
+                                    maxChangedX = Math.max(maxChangedX, x);
+                                    if (minChangedY < 0) {
+                                        minChangedY = y;
+                                    }
+                                    maxChangedY = y;
+                                }
+                            }
+                        }
+                        if (minChangedY >= 0) {
+                            changedTiles[row * columns + column] = new Rectangle(minX + minChangedX, minChangedY,
+                                    maxChangedX - minChangedX + 1, maxChangedY - minChangedY + 1);
+                        }
+                    }
+                }
+            }
+        });
+
+        List<Rectangle> result = mergeChangedTiles(changedTiles, columns, rows);
+
+        // the area not covered by the smaller image
+        if (maxWidth > minWidth) {
+            result.add(new Rectangle(minWidth, 0, maxWidth - minWidth, maxHeight));
+        }
+        if (maxHeight > minHeight) {
+            result.add(new Rectangle(0, minHeight, minWidth, maxHeight - minHeight));
+        }
+
+        return result;
+    }
+
+    /**
+     * Merge the changed tiles touching each other (including diagonally) into
+     * the bounding box of their changes.
+     */
+    static List<Rectangle> mergeChangedTiles(Rectangle[] changedTiles, int columns, int rows) {
+        List<Rectangle> result = new ArrayList<Rectangle>();
+        boolean[] visited = new boolean[changedTiles.length];
+        int[] stack = new int[changedTiles.length];
+
+        for (int i = 0; i < changedTiles.length; i++) {
+            if (changedTiles[i] == null || visited[i]) {
+                continue;
+            }
+            Rectangle region = new Rectangle(changedTiles[i]);
+            int stackSize = 0;
+            stack[stackSize++] = i;
+            visited[i] = true;
+            while (stackSize > 0) {
+                int tile = stack[--stackSize];
+                region.add(changedTiles[tile]);
+                int column = tile % columns;
+                int row = tile / columns;
+                for (int neighbourRow = Math.max(0, row - 1); neighbourRow <= Math.min(rows - 1, row + 1); neighbourRow++) {
+                    for (int neighbourColumn = Math.max(0, column - 1); neighbourColumn <= Math.min(columns - 1, column + 1); neighbourColumn++) {
+                        int neighbour = neighbourRow * columns + neighbourColumn;
+                        if (changedTiles[neighbour] != null && !visited[neighbour]) {
+                            visited[neighbour] = true;
+                            stack[stackSize++] = neighbour;
+                        }
+                    }
+                }
+            }
+            result.add(region);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if any of the red, green or blue values differ by more than the tolerance.
+     */
+    static boolean isDifferent(int rgb1, int rgb2, int tolerance) {
+        return Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF)) > tolerance
+                || Math.abs(((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF)) > tolerance
+                || Math.abs(((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF)) > tolerance;
+    }
+
+    /**
+     * Get the diff image, the first band finding a difference creates it.
+     */
+    private BufferedImage getDiffImage(AtomicReference<BufferedImage> bim3, int minWidth, int minHeight, int maxWidth, int maxHeight) {
+        synchronized (bim3) {
+            if (bim3.get() == null) {
+                bim3.set(createEmptyDiffImage(minWidth, minHeight, maxWidth, maxHeight));
+            }
+            return bim3.get();
         }
-        return bim3;
     }
 
     /**
@@ -1,13 +1,24 @@
 package org.github.jipsg.image.comparison;
 
 import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.PixelAccess;
 import org.github.jipsg.imageio.BaseImageIoTest;
 import org.junit.Test;
 
+import java.awt.Rectangle;
+import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by sgoeschl on 18/11/14.
@@ -40,4 +51,135 @@ public class IdenticalImageComparatorTest extends BaseImageIoTest {
         BufferedImageFactory.writeBufferedImage(bufferedImage, "png", new File("./target/indentical-modified.png"));
     }
 
+    @Test
+    public void testIdenticalWithTolerance() throws Exception {
+
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage3 = BufferedImageFactory.create("../../images/samples/open-office-02.pdf.300.0.png");
+        final IdenticalImageComparator identicalImageComparator = new IdenticalImageComparator();
+
+        assertTrue(identicalImageComparator.identical(bufferedImage1, bufferedImage2, 0));
+        assertFalse(identicalImageComparator.identical(bufferedImage1, bufferedImage3, 1));
+        assertFalse(identicalImageComparator.identical(bufferedImage1, bufferedImage1.getSubimage(0, 0, 100, 100), 1));
+
+        // change a single pixel in the last row by 2 color steps
+        final int x = bufferedImage2.getWidth() / 2;
+        final int y = bufferedImage2.getHeight() - 1;
+        final int rgb = bufferedImage2.getRGB(x, y);
+        bufferedImage2.setRGB(x, y, (rgb & 0xFFFFFF00) | ((rgb & 0xFF) < 128 ? (rgb & 0xFF) + 2 : (rgb & 0xFF) - 2));
+
+        assertFalse(identicalImageComparator.identical(bufferedImage1, bufferedImage2, 1));
+        assertTrue(identicalImageComparator.identical(bufferedImage1, bufferedImage2, 2));
+        assertNotNull(identicalImageComparator.diffImages(bufferedImage1, bufferedImage2));
+    }
+
+    @Test
+    public void testCompareImages() throws Exception {
+
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("../../images/samples/open-office-02.pdf.300.0.png");
+        final ImageComparator imageComparator = new IdenticalImageComparator();
+
+        final ImageComparisonResult identicalResult = imageComparator.compareImages(bufferedImage1, bufferedImage1);
+        assertTrue(identicalResult.isIdentical());
+        assertNull(identicalResult.getDiffImage());
+
+        final ImageComparisonResult result = imageComparator.compareImages(bufferedImage1, bufferedImage2);
+        assertFalse(result.isIdentical());
+        assertNotNull(result.getDiffImage());
+        assertFalse(result.getBoundingBoxes().isEmpty());
+        assertTrue(result.getPsnr() > 0 && result.getSsim() < 1.0);
+    }
+
+    @Test
+    public void testFindChangedRegions() throws Exception {
+
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("../../images/samples/open-office-02.pdf.300.0.png");
+        final BufferedImage bufferedImage3 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final IdenticalImageComparator identicalImageComparator = new IdenticalImageComparator();
+        final TileSignature tileSignature = TileSignature.of(bufferedImage1);
+
+        assertTrue(identicalImageComparator.findChangedRegions(bufferedImage1, tileSignature, bufferedImage3).isEmpty());
+
+        // every pixel of the diff image which is not white lies within a changed region
+        final List<Rectangle> changedRegions = identicalImageComparator.findChangedRegions(bufferedImage1, tileSignature, bufferedImage2);
+        final BufferedImage diffImage = identicalImageComparator.diffImages(bufferedImage1, bufferedImage2);
+        final Area area = new Area();
+        for (Rectangle changedRegion : changedRegions) {
+            area.add(new Area(changedRegion));
+        }
+        assertFalse(changedRegions.isEmpty());
+        for (int y = 0; y < diffImage.getHeight(); y++) {
+            for (int x = 0; x < diffImage.getWidth(); x++) {
+                if ((diffImage.getRGB(x, y) & 0xFFFFFF) != 0xFFFFFF) {
+                    assertTrue("pixel " + x + "," + y, area.contains(x, y));
+                }
+            }
+        }
+
+        // a single changed pixel is found exactly
+        final int rgb = bufferedImage3.getRGB(1000, 2000);
+        bufferedImage3.setRGB(1000, 2000, rgb ^ 0x808080);
+        assertEquals(Arrays.asList(new Rectangle(1000, 2000, 1, 1)), identicalImageComparator.findChangedRegions(bufferedImage1, tileSignature, bufferedImage3));
+    }
+
+    /**
+     * Two bytes of a tile changed by 128 flip the same highest bit of two hashed
+     * words - the changes must not cancel out.
+     */
+    @Test
+    public void testFindChangedRegionsWithPairedChanges() {
+
+        final BufferedImage bufferedImage1 = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] data1 = PixelAccess.of(bufferedImage1).getByteData();
+        Arrays.fill(data1, (byte) 0x20);
+        final BufferedImage bufferedImage2 = new BufferedImage(64, 64, BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] data2 = PixelAccess.of(bufferedImage2).getByteData();
+        Arrays.fill(data2, (byte) 0x20);
+        data2[0] = (byte) 0xA0;
+        data2[8] = (byte) 0xA0;
+
+        final IdenticalImageComparator identicalImageComparator = new IdenticalImageComparator();
+        assertFalse(identicalImageComparator.identical(bufferedImage1, bufferedImage2, 1));
+        assertEquals(Arrays.asList(new Rectangle(0, 0, 9, 1)), identicalImageComparator.findChangedRegions(bufferedImage1, bufferedImage2));
+    }
+
+    @Test
+    public void testPixelAccessMatchesGetRGB() throws Exception {
+
+        final int[] imageTypes = {
+                BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_INT_ARGB_PRE,
+                BufferedImage.TYPE_INT_BGR,
+                BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR,
+                BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_USHORT_GRAY
+        };
+
+        final Random random = new Random(42);
+        final int[] argb = new int[97 * 61];
+        for (int i = 0; i < argb.length; i++) {
+            argb[i] = random.nextInt();
+        }
+
+        for (int imageType : imageTypes) {
+            final BufferedImage image = new BufferedImage(97, 61, imageType);
+            final BufferedImage expectedImage = new BufferedImage(97, 61, imageType);
+            PixelAccess.of(image).setRGB(argb);
+            expectedImage.setRGB(0, 0, 97, 61, argb, 0, 97);
+
+            assertArrayEquals("type " + imageType,
+                    expectedImage.getRGB(0, 0, 97, 61, null, 0, 97),
+                    image.getRGB(0, 0, 97, 61, null, 0, 97));
+
+            final BufferedImage subImage = image.getSubimage(13, 7, 50, 40);
+            assertArrayEquals("sub-image of type " + imageType,
+                    subImage.getRGB(0, 0, 50, 40, null, 0, 50),
+                    PixelAccess.of(subImage).getRGB(null));
+        }
+    }
 }
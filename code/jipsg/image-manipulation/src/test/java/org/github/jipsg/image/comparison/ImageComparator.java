@@ -1,7 +1,21 @@
 package org.github.jipsg.image.comparison;
 
+import java.awt.image.BufferedImage;
+
 /**
+ * Compares two images - the result holds the metrics of the differences and
+ * the diff image of the implementation.
+ * <p>
  * Created by sgoeschl on 18/11/14.
  */
 public interface ImageComparator {
+
+    /**
+     * Compare two images.
+     *
+     * @param bim1 the expected image
+     * @param bim2 the actual image
+     * @return the metrics and the diff image if the images differ
+     */
+    ImageComparisonResult compareImages(BufferedImage bim1, BufferedImage bim2);
 }
@@ -0,0 +1,116 @@
+package org.github.jipsg.image.comparison;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of comparing two images as computed by <code>ImageMetrics</code>.
+ */
+public class ImageComparisonResult {
+
+    private final int width;
+    private final int height;
+    private final long changedPixels;
+    private final List<Rectangle> boundingBoxes;
+    private final int maxDelta;
+    private final double psnr;
+    private final double ssim;
+    private BufferedImage diffImage;
+
+    ImageComparisonResult(int width, int height, long changedPixels, List<Rectangle> boundingBoxes, int maxDelta, double psnr, double ssim) {
+        this.width = width;
+        this.height = height;
+        this.changedPixels = changedPixels;
+        this.boundingBoxes = Collections.unmodifiableList(boundingBoxes);
+        this.maxDelta = maxDelta;
+        this.psnr = psnr;
+        this.ssim = ssim;
+    }
+
+    /**
+     * The width of the larger image.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * The height of the larger image.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Are the images identical within the tolerance of the metrics?
+     */
+    public boolean isIdentical() {
+        return changedPixels == 0;
+    }
+
+    /**
+     * Number of pixels with a channel differing by more than the tolerance,
+     * including the area not covered by the smaller image.
+     */
+    public long getChangedPixels() {
+        return changedPixels;
+    }
+
+    /**
+     * The bounding boxes of connected changes - changed tiles of 64x64 pixels touching
+     * each other (including diagonally) share the bounding box of their changed pixels,
+     * so separate changes less than a tile apart may end up in the same box.
+     */
+    public List<Rectangle> getBoundingBoxes() {
+        return boundingBoxes;
+    }
+
+    /**
+     * The largest difference of a red, green or blue value.
+     */
+    public int getMaxDelta() {
+        return maxDelta;
+    }
+
+    /**
+     * The peak signal-to-noise ratio in dB of the red, green and blue values,
+     * infinite for identical images.
+     */
+    public double getPsnr() {
+        return psnr;
+    }
+
+    /**
+     * The mean structural similarity of the luminance between -1 and 1, 1 for
+     * identical images and NaN if it was not computed.
+     */
+    public double getSsim() {
+        return ssim;
+    }
+
+    /**
+     * The diff image created by the comparator or null if the images are identical.
+     */
+    public BufferedImage getDiffImage() {
+        return diffImage;
+    }
+
+    void setDiffImage(BufferedImage diffImage) {
+        this.diffImage = diffImage;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageComparisonResult{" +
+                "width=" + width +
+                ", height=" + height +
+                ", changedPixels=" + changedPixels +
+                ", boundingBoxes=" + boundingBoxes.size() +
+                ", maxDelta=" + maxDelta +
+                ", psnr=" + psnr +
+                ", ssim=" + ssim +
+                '}';
+    }
+}
@@ -0,0 +1,276 @@
+package org.github.jipsg.image.comparison;
+
+import org.github.jipsg.common.image.Histogram;
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the metrics of two images in parallel row bands - the changed pixels
+ * and their bounding boxes, the maximum channel delta, the PSNR and the mean SSIM.
+ * The bounding boxes are the ones of <code>IdenticalImageComparator.findChangedRegions()</code>,
+ * i.e. the changes of touching tiles are merged.
+ * <p>
+ * The SSIM is computed on the luminance using a sliding square window whose sums
+ * are looked up in integral images. The integral images only cover a strip of rows
+ * at a time so the memory needed does not grow with the height of the images.
+ * <p>
+ * Images of different sizes are compared on their common area, the remaining
+ * area of the larger image counts as changed.
+ */
+public class ImageMetrics {
+
+    public static final int DEFAULT_SSIM_WINDOW = 8;
+
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    /** Number of window rows sharing the integral images of a strip */
+    private static final int SSIM_STRIP_HEIGHT = 64;
+
+    private final int tolerance;
+    private boolean ssim = true;
+    private int ssimWindow = DEFAULT_SSIM_WINDOW;
+
+    public ImageMetrics() {
+        this(0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param tolerance the difference of a red, green or blue value not considered as change
+     */
+    public ImageMetrics(int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Invalid tolerance : " + tolerance);
+        }
+        this.tolerance = tolerance;
+    }
+
+    public int getTolerance() {
+        return tolerance;
+    }
+
+    public boolean isSsim() {
+        return ssim;
+    }
+
+    /**
+     * Enable or disable computing the SSIM which is the most expensive metric.
+     */
+    public void setSsim(boolean ssim) {
+        this.ssim = ssim;
+    }
+
+    public int getSsimWindow() {
+        return ssimWindow;
+    }
+
+    /**
+     * Set the edge length of the SSIM window in pixels.
+     */
+    public void setSsimWindow(int ssimWindow) {
+        if (ssimWindow <= 0) {
+            throw new IllegalArgumentException("Invalid SSIM window : " + ssimWindow);
+        }
+        this.ssimWindow = ssimWindow;
+    }
+
+    /**
+     * Compute the metrics of two images.
+     *
+     * @param bim1 the expected image
+     * @param bim2 the actual image
+     * @return the result without a diff image
+     */
+    public ImageComparisonResult compare(BufferedImage bim1, BufferedImage bim2) {
+        final int minWidth = Math.min(bim1.getWidth(), bim2.getWidth());
+        final int minHeight = Math.min(bim1.getHeight(), bim2.getHeight());
+        final int maxWidth = Math.max(bim1.getWidth(), bim2.getWidth());
+        final int maxHeight = Math.max(bim1.getHeight(), bim2.getHeight());
+        final PixelAccess pixelAccess1 = PixelAccess.of(bim1);
+        final PixelAccess pixelAccess2 = PixelAccess.of(bim2);
+
+        // the bands store their results per row which are summed up in order afterwards
+        final int[] changedPixels = new int[minHeight];
+        final long[] squaredErrors = new long[minHeight];
+        final int[] maxDeltas = new int[minHeight];
+
+        // the bounding boxes of the changes per tile, every band owns whole rows of tiles
+        final int tileSize = TileSignature.DEFAULT_TILE_SIZE;
+        final int columns = (minWidth + tileSize - 1) / tileSize;
+        final int rows = (minHeight + tileSize - 1) / tileSize;
+        final Rectangle[] changedTiles = new Rectangle[columns * rows];
+
+        RowBands.process(rows, 1, new RowBands.Task() {
+            public void process(int minRow, int maxRow) {
+                int[] row1 = new int[minWidth];
+                int[] row2 = new int[minWidth];
+                int[] minChangedX = new int[columns];
+                int[] maxChangedX = new int[columns];
+                int[] minChangedY = new int[columns];
+                int[] maxChangedY = new int[columns];
+                for (int row = minRow; row < maxRow; row++) {
+                    Arrays.fill(minChangedX, Integer.MAX_VALUE);
+                    Arrays.fill(maxChangedX, -1);
+                    Arrays.fill(minChangedY, -1);
+                    for (int y = row * tileSize; y < Math.min(minHeight, (row + 1) * tileSize); y++) {
+                        pixelAccess1.getRGB(0, y, minWidth, row1, 0);
+                        pixelAccess2.getRGB(0, y, minWidth, row2, 0);
+                        int changed = 0;
+                        long squaredError = 0;
+                        int maxDelta = 0;
+                        for (int x = 0; x < minWidth; x++) {
+                            int rgb1 = row1[x];
+                            int rgb2 = row2[x];
+                            if (rgb1 == rgb2) {
+                                continue;
+                            }
+                            int r = Math.abs(((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF));
+                            int g = Math.abs(((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF));
+                            int b = Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF));
+                            int delta = Math.max(r, Math.max(g, b));
+                            squaredError += r * r + g * g + b * b;
+                            maxDelta = Math.max(maxDelta, delta);
+                            if (delta > tolerance) {
+                                int column = x / tileSize;
+                                changed++;
+                                minChangedX[column] = Math.min(minChangedX[column], x);
+                                maxChangedX[column] = Math.max(maxChangedX[column], x);
+                                if (minChangedY[column] < 0) {
+                                    minChangedY[column] = y;
+                                }
+                                maxChangedY[column] = y;
+                            }
+                        }
+                        changedPixels[y] = changed;
+                        squaredErrors[y] = squaredError;
+                        maxDeltas[y] = maxDelta;
+                    }
+                    for (int column = 0; column < columns; column++) {
+                        if (minChangedY[column] >= 0) {
+                            changedTiles[row * columns + column] = new Rectangle(minChangedX[column], minChangedY[column],
+                                    maxChangedX[column] - minChangedX[column] + 1, maxChangedY[column] - minChangedY[column] + 1);
+                        }
+                    }
+                }
+            }
+        });
+
+        long changedPixelCount = (long) maxWidth * maxHeight - (long) minWidth * minHeight;
+        long squaredError = 0;
+        int maxDelta = 0;
+
+        for (int y = 0; y < minHeight; y++) {
+            changedPixelCount += changedPixels[y];
+            squaredError += squaredErrors[y];
+            maxDelta = Math.max(maxDelta, maxDeltas[y]);
+        }
+
+        List<Rectangle> boundingBoxes = IdenticalImageComparator.mergeChangedTiles(changedTiles, columns, rows);
+
+        // the area not covered by the smaller image
+        if (maxWidth > minWidth) {
+            boundingBoxes.add(new Rectangle(minWidth, 0, maxWidth - minWidth, maxHeight));
+        }
+        if (maxHeight > minHeight) {
+            boundingBoxes.add(new Rectangle(0, minHeight, minWidth, maxHeight - minHeight));
+        }
+
+        double mse = (double) squaredError / (3.0 * minWidth * minHeight);
+        double psnr = mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+        double ssimValue = ssim ? computeSsim(pixelAccess1, pixelAccess2, minWidth, minHeight) : Double.NaN;
+
+        return new ImageComparisonResult(maxWidth, maxHeight, changedPixelCount, boundingBoxes, maxDelta, psnr, ssimValue);
+    }
+
+    /**
+     * Compute the mean SSIM of all window positions using the integral images of
+     * the luminance values, their squares and their products.
+     */
+    private double computeSsim(final PixelAccess pixelAccess1, final PixelAccess pixelAccess2, final int width, int height) {
+        final int window = Math.min(ssimWindow, Math.min(width, height));
+        if (window == 0) {
+            return Double.NaN;
+        }
+        final int windowRows = height - window + 1;
+        final int windowColumns = width - window + 1;
+        final double windowPixels = window * window;
+        final double[] ssimSums = new double[windowRows];
+
+        RowBands.process(windowRows, new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                int stride = width + 1;
+                int stripSize = (SSIM_STRIP_HEIGHT + window) * stride;
+                // the first row and column of the integral images stay zero
+                long[] sum1 = new long[stripSize];
+                long[] sum2 = new long[stripSize];
+                long[] squares1 = new long[stripSize];
+                long[] squares2 = new long[stripSize];
+                long[] products = new long[stripSize];
+                int[] row1 = new int[width];
+                int[] row2 = new int[width];
+
+                for (int stripY = minY; stripY < maxY; stripY += SSIM_STRIP_HEIGHT) {
+                    int stripWindowRows = Math.min(SSIM_STRIP_HEIGHT, maxY - stripY);
+                    int stripRows = stripWindowRows + window - 1;
+
+                    for (int r = 0; r < stripRows; r++) {
+                        pixelAccess1.getRGB(0, stripY + r, width, row1, 0);
+                        pixelAccess2.getRGB(0, stripY + r, width, row2, 0);
+                        long rowSum1 = 0;
+                        long rowSum2 = 0;
+                        long rowSquares1 = 0;
+                        long rowSquares2 = 0;
+                        long rowProducts = 0;
+                        for (int x = 0, i = (r + 1) * stride + 1; x < width; x++, i++) {
+                            int l1 = Histogram.getLuminance(row1[x]);
+                            int l2 = Histogram.getLuminance(row2[x]);
+                            rowSum1 += l1;
+                            rowSum2 += l2;
+                            rowSquares1 += l1 * l1;
+                            rowSquares2 += l2 * l2;
+                            rowProducts += l1 * l2;
+                            sum1[i] = sum1[i - stride] + rowSum1;
+                            sum2[i] = sum2[i - stride] + rowSum2;
+                            squares1[i] = squares1[i - stride] + rowSquares1;
+                            squares2[i] = squares2[i - stride] + rowSquares2;
+                            products[i] = products[i - stride] + rowProducts;
+                        }
+                    }
+
+                    for (int r = 0; r < stripWindowRows; r++) {
+                        double ssimSum = 0;
+                        for (int x = 0; x < windowColumns; x++) {
+                            int topLeft = r * stride + x;
+                            int topRight = topLeft + window;
+                            int bottomLeft = topLeft + window * stride;
+                            int bottomRight = bottomLeft + window;
+
+                            double mean1 = (sum1[bottomRight] - sum1[topRight] - sum1[bottomLeft] + sum1[topLeft]) / windowPixels;
+                            double mean2 = (sum2[bottomRight] - sum2[topRight] - sum2[bottomLeft] + sum2[topLeft]) / windowPixels;
+                            double variance1 = (squares1[bottomRight] - squares1[topRight] - squares1[bottomLeft] + squares1[topLeft]) / windowPixels - mean1 * mean1;
+                            double variance2 = (squares2[bottomRight] - squares2[topRight] - squares2[bottomLeft] + squares2[topLeft]) / windowPixels - mean2 * mean2;
+                            double covariance = (products[bottomRight] - products[topRight] - products[bottomLeft] + products[topLeft]) / windowPixels - mean1 * mean2;
+
+                            ssimSum += ((2 * mean1 * mean2 + C1) * (2 * covariance + C2))
+                                    / ((mean1 * mean1 + mean2 * mean2 + C1) * (variance1 + variance2 + C2));
+                        }
+                        ssimSums[stripY + r] = ssimSum;
+                    }
+                }
+            }
+        });
+
+        double result = 0;
+        for (double ssimSum : ssimSums) {
+            result += ssimSum;
+        }
+        return result / ((double) windowRows * windowColumns);
+    }
+}
@@ -0,0 +1,158 @@
+package org.github.jipsg.image.comparison;
+
+import org.github.jipsg.common.image.Histogram;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the metrics against a plain per-window computation.
+ */
+public class ImageMetricsTest {
+
+    @Test
+    public void testIdenticalImages() {
+
+        final BufferedImage bufferedImage = createNoiseImage(120, 90, new Random(7));
+        final ImageComparisonResult result = new ImageMetrics().compare(bufferedImage, bufferedImage);
+
+        assertTrue(result.isIdentical());
+        assertEquals(0, result.getMaxDelta());
+        assertTrue(result.getBoundingBoxes().isEmpty());
+        assertEquals(Double.POSITIVE_INFINITY, result.getPsnr(), 0);
+        assertEquals(1.0, result.getSsim(), 1e-12);
+    }
+
+    @Test
+    public void testMetricsMatchPlainComputation() {
+
+        final Random random = new Random(42);
+        final int width = 150;
+        final int height = 170;
+        final BufferedImage bufferedImage1 = createNoiseImage(width, height, random);
+        final BufferedImage bufferedImage2 = createNoiseImage(width, height, random);
+
+        // change a small block at the top and the bottom rows - their tiles don't touch
+        final int[] argb = bufferedImage1.getRGB(0, 0, width, height, null, 0, width);
+        final int[] changed = Arrays.copyOf(argb, argb.length);
+        for (int y = 40; y < 50; y++) {
+            for (int x = 20; x < 30; x++) {
+                changed[y * width + x] = argb[y * width + x] ^ 0x00030000;
+            }
+            changed[y * width + 140] = argb[y * width + 140] ^ 0x00000001;
+        }
+        for (int y = 130; y < 170; y++) {
+            for (int x = 0; x < width; x++) {
+                changed[y * width + x] = bufferedImage2.getRGB(x, y);
+            }
+        }
+        bufferedImage2.setRGB(0, 0, width, height, changed, 0, width);
+
+        final ImageMetrics imageMetrics = new ImageMetrics(1);
+        final ImageComparisonResult result = imageMetrics.compare(bufferedImage1, bufferedImage2);
+
+        long squaredError = 0;
+        int maxDelta = 0;
+        long changedPixels = 0;
+        for (int i = 0; i < argb.length; i++) {
+            int delta = 0;
+            for (int shift = 0; shift < 24; shift += 8) {
+                int d = Math.abs(((argb[i] >> shift) & 0xFF) - ((changed[i] >> shift) & 0xFF));
+                squaredError += d * d;
+                delta = Math.max(delta, d);
+            }
+            maxDelta = Math.max(maxDelta, delta);
+            changedPixels += delta > 1 ? 1 : 0;
+        }
+
+        assertFalse(result.isIdentical());
+        assertEquals(changedPixels, result.getChangedPixels());
+        assertEquals(maxDelta, result.getMaxDelta());
+        assertEquals(10 * Math.log10(255 * 255 / (squaredError / (3.0 * argb.length))), result.getPsnr(), 1e-9);
+        assertEquals(ssim(argb, changed, width, height, ImageMetrics.DEFAULT_SSIM_WINDOW), result.getSsim(), 1e-9);
+        assertEquals(Arrays.asList(new Rectangle(20, 40, 10, 10), new Rectangle(0, 130, width, 40)), result.getBoundingBoxes());
+    }
+
+    /**
+     * Changes on the same rows but far apart get separate bounding boxes.
+     */
+    @Test
+    public void testBoundingBoxesOfDistantChanges() {
+
+        final BufferedImage bufferedImage1 = createNoiseImage(300, 100, new Random(5));
+        final BufferedImage bufferedImage2 = createNoiseImage(300, 100, new Random(5));
+        bufferedImage2.setRGB(5, 10, bufferedImage2.getRGB(5, 10) ^ 0x808080);
+        bufferedImage2.setRGB(290, 12, bufferedImage2.getRGB(290, 12) ^ 0x808080);
+        bufferedImage2.setRGB(6, 90, bufferedImage2.getRGB(6, 90) ^ 0x808080);
+
+        final ImageComparisonResult result = new ImageMetrics(1).compare(bufferedImage1, bufferedImage2);
+
+        assertEquals(Arrays.asList(new Rectangle(5, 10, 2, 81), new Rectangle(290, 12, 1, 1)), result.getBoundingBoxes());
+    }
+
+    @Test
+    public void testDifferentSizes() {
+
+        final BufferedImage bufferedImage = createNoiseImage(100, 80, new Random(3));
+        final ImageComparisonResult result = new ImageMetrics().compare(bufferedImage, bufferedImage.getSubimage(0, 0, 90, 80));
+
+        assertEquals(100, result.getWidth());
+        assertEquals(10 * 80, result.getChangedPixels());
+        assertEquals(Arrays.asList(new Rectangle(90, 0, 10, 80)), result.getBoundingBoxes());
+    }
+
+    private static BufferedImage createNoiseImage(int width, int height, Random random) {
+        final BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                // smooth gradient plus noise to get a meaningful structure
+                int value = Math.min(255, (x + y) / 2 + random.nextInt(64));
+                bufferedImage.setRGB(x, y, (value << 16) | ((255 - value) << 8) | random.nextInt(256));
+            }
+        }
+        return bufferedImage;
+    }
+
+    private static double ssim(int[] argb1, int[] argb2, int width, int height, int window) {
+        final double c1 = (0.01 * 255) * (0.01 * 255);
+        final double c2 = (0.03 * 255) * (0.03 * 255);
+        final int n = window * window;
+        double result = 0;
+        for (int y = 0; y + window <= height; y++) {
+            for (int x = 0; x + window <= width; x++) {
+                double mean1 = 0, mean2 = 0;
+                for (int v = y; v < y + window; v++) {
+                    for (int u = x; u < x + window; u++) {
+                        mean1 += Histogram.getLuminance(argb1[v * width + u]);
+                        mean2 += Histogram.getLuminance(argb2[v * width + u]);
+                    }
+                }
+                mean1 /= n;
+                mean2 /= n;
+                double variance1 = 0, variance2 = 0, covariance = 0;
+                for (int v = y; v < y + window; v++) {
+                    for (int u = x; u < x + window; u++) {
+                        double l1 = Histogram.getLuminance(argb1[v * width + u]) - mean1;
+                        double l2 = Histogram.getLuminance(argb2[v * width + u]) - mean2;
+                        variance1 += l1 * l1;
+                        variance2 += l2 * l2;
+                        covariance += l1 * l2;
+                    }
+                }
+                variance1 /= n;
+                variance2 /= n;
+                covariance /= n;
+                result += ((2 * mean1 * mean2 + c1) * (2 * covariance + c2))
+                        / ((mean1 * mean1 + mean2 * mean2 + c1) * (variance1 + variance2 + c2));
+            }
+        }
+        return result / ((height - window + 1) * (width - window + 1));
+    }
+}
@@ -0,0 +1,174 @@
+package org.github.jipsg.image.comparison;
+
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The minimum, maximum and sum of the red, green and blue values of square blocks
+ * on several levels - the finest level has blocks of 8x8 pixels and every coarser
+ * level merges 2x2 blocks until a single block covers the image.
+ * <p>
+ * A pyramid only depends on its image, so the pyramid of a reference image can be
+ * kept and used for many comparisons.
+ */
+public class ImagePyramid {
+
+    public static final int BLOCK_SIZE = 8;
+
+    private final int width;
+    private final int height;
+    private final Level[] levels;
+
+    /**
+     * The blocks of a level in row-major order, three channels per block.
+     */
+    static class Level {
+
+        final int blockSize;
+        final int columns;
+        final int rows;
+        final byte[] min;
+        final byte[] max;
+        final long[] sum;
+
+        Level(int blockSize, int columns, int rows) {
+            this.blockSize = blockSize;
+            this.columns = columns;
+            this.rows = rows;
+            this.min = new byte[3 * columns * rows];
+            this.max = new byte[3 * columns * rows];
+            this.sum = new long[3 * columns * rows];
+        }
+    }
+
+    private ImagePyramid(int width, int height, Level[] levels) {
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * Build the pyramid of an image - the finest level is computed in parallel bands.
+     */
+    public static ImagePyramid of(BufferedImage image) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        int levelCount = 1;
+        for (int size = BLOCK_SIZE; size < width || size < height; size *= 2) {
+            levelCount++;
+        }
+
+        Level[] levels = new Level[levelCount];
+        final Level finest = new Level(BLOCK_SIZE, (width + BLOCK_SIZE - 1) / BLOCK_SIZE, (height + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        final PixelAccess pixelAccess = PixelAccess.of(image);
+
+        RowBands.process(finest.rows, 1, new RowBands.Task() {
+            public void process(int minRow, int maxRow) {
+                int[] row = new int[width];
+                int[] min = new int[3 * finest.columns];
+                int[] max = new int[3 * finest.columns];
+                long[] sum = new long[3 * finest.columns];
+                for (int blockRow = minRow; blockRow < maxRow; blockRow++) {
+                    Arrays.fill(min, 255);
+                    Arrays.fill(max, 0);
+                    Arrays.fill(sum, 0);
+                    for (int y = blockRow * BLOCK_SIZE; y < Math.min(height, (blockRow + 1) * BLOCK_SIZE); y++) {
+                        pixelAccess.getRGB(0, y, width, row, 0);
+                        for (int x = 0, i = 0; x < width; x += BLOCK_SIZE, i += 3) {
+                            int minR = 255, minG = 255, minB = 255;
+                            int maxR = 0, maxG = 0, maxB = 0;
+                            int sumR = 0, sumG = 0, sumB = 0;
+                            for (int end = Math.min(width, x + BLOCK_SIZE), j = x; j < end; j++) {
+                                int r = (row[j] >> 16) & 0xFF;
+                                int g = (row[j] >> 8) & 0xFF;
+                                int b = row[j] & 0xFF;
+                                minR = Math.min(minR, r);
+                                minG = Math.min(minG, g);
+                                minB = Math.min(minB, b);
+                                maxR = Math.max(maxR, r);
+                                maxG = Math.max(maxG, g);
+                                maxB = Math.max(maxB, b);
+                                sumR += r;
+                                sumG += g;
+                                sumB += b;
+                            }
+                            min[i] = Math.min(min[i], minR);
+                            min[i + 1] = Math.min(min[i + 1], minG);
+                            min[i + 2] = Math.min(min[i + 2], minB);
+                            max[i] = Math.max(max[i], maxR);
+                            max[i + 1] = Math.max(max[i + 1], maxG);
+                            max[i + 2] = Math.max(max[i + 2], maxB);
+                            sum[i] += sumR;
+                            sum[i + 1] += sumG;
+                            sum[i + 2] += sumB;
+                        }
+                    }
+                    int offset = 3 * blockRow * finest.columns;
+                    for (int i = 0; i < min.length; i++) {
+                        finest.min[offset + i] = (byte) min[i];
+                        finest.max[offset + i] = (byte) max[i];
+                        finest.sum[offset + i] = sum[i];
+                    }
+                }
+            }
+        });
+
+        levels[0] = finest;
+        for (int level = 1; level < levelCount; level++) {
+            levels[level] = merge(levels[level - 1]);
+        }
+
+        return new ImagePyramid(width, height, levels);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    Level getLevel(int level) {
+        return levels[level];
+    }
+
+    /**
+     * Merge 2x2 blocks of the finer level into one block.
+     */
+    private static Level merge(Level finer) {
+        Level result = new Level(2 * finer.blockSize, (finer.columns + 1) / 2, (finer.rows + 1) / 2);
+
+        for (int row = 0; row < result.rows; row++) {
+            for (int column = 0; column < result.columns; column++) {
+                int i = 3 * (row * result.columns + column);
+                for (int channel = 0; channel < 3; channel++) {
+                    int min = 255;
+                    int max = 0;
+                    long sum = 0;
+                    for (int finerRow = 2 * row; finerRow < Math.min(finer.rows, 2 * row + 2); finerRow++) {
+                        for (int finerColumn = 2 * column; finerColumn < Math.min(finer.columns, 2 * column + 2); finerColumn++) {
+                            int j = 3 * (finerRow * finer.columns + finerColumn) + channel;
+                            min = Math.min(min, finer.min[j] & 0xFF);
+                            max = Math.max(max, finer.max[j] & 0xFF);
+                            sum += finer.sum[j];
+                        }
+                    }
+                    result.min[i + channel] = (byte) min;
+                    result.max[i + channel] = (byte) max;
+                    result.sum[i + channel] = sum;
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -15,7 +15,29 @@ import java.awt.image.RGBImageFilter;
 /**
  * Created by sgoeschl on 18/11/14.
  */
-public class InvertingImageComparator {
+public class InvertingImageComparator implements ImageComparator {
+
+    private ImageMetrics imageMetrics = new ImageMetrics();
+
+    public ImageMetrics getImageMetrics() {
+        return imageMetrics;
+    }
+
+    public void setImageMetrics(ImageMetrics imageMetrics) {
+        this.imageMetrics = imageMetrics;
+    }
+
+    /**
+     * Compare the images using the image metrics, the diff image is the one of
+     * <code>compare</code>.
+     */
+    public ImageComparisonResult compareImages(BufferedImage bim1, BufferedImage bim2) {
+        ImageComparisonResult result = imageMetrics.compare(bim1, bim2);
+        if (!result.isIdentical()) {
+            result.setDiffImage(compare(bim1, bim2));
+        }
+        return result;
+    }
 
     public BufferedImage compare(BufferedImage bim1, BufferedImage bim2) {
 
@@ -0,0 +1,159 @@
+package org.github.jipsg.image.comparison;
+
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Check if two images are identical within a tolerance by comparing their
+ * <code>ImagePyramid</code> from the coarsest to the finest level. On every level
+ * a block pair decides the answer if
+ * <ul>
+ * <li>its mean values differ by more than the tolerance - the images differ</li>
+ * <li>all values of one block are within the tolerance of all values of the other
+ * block, e.g. for the white background of a page - the block is identical</li>
+ * </ul>
+ * Only the blocks still ambiguous on the finest level are compared pixel by pixel.
+ * The answer is the one of <code>IdenticalImageComparator.identical()</code> which
+ * uses this class for images having a pyramid.
+ */
+class MultiResolutionImageComparator {
+
+    private final int tolerance;
+
+    /**
+     * Constructor.
+     *
+     * @param tolerance the allowed difference of the red, green and blue values
+     */
+    MultiResolutionImageComparator(int tolerance) {
+        if (tolerance < 0 || tolerance > 255) {
+            throw new IllegalArgumentException("Invalid tolerance : " + tolerance);
+        }
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Check if two images are identical within the tolerance.
+     *
+     * @param bim1     the first image
+     * @param pyramid1 the pyramid of the first image
+     * @param bim2     the second image
+     * @param pyramid2 the pyramid of the second image
+     * @return true if no red, green or blue value differs by more than the tolerance
+     */
+    boolean identical(BufferedImage bim1, ImagePyramid pyramid1, BufferedImage bim2, ImagePyramid pyramid2) {
+        if (bim1.getWidth() != bim2.getWidth() || bim1.getHeight() != bim2.getHeight()) {
+            return false;
+        }
+        if (pyramid1.getWidth() != bim1.getWidth() || pyramid1.getHeight() != bim1.getHeight()
+                || pyramid2.getWidth() != bim2.getWidth() || pyramid2.getHeight() != bim2.getHeight()) {
+            throw new IllegalArgumentException("The pyramids don't belong to the images");
+        }
+
+        final int width = bim1.getWidth();
+        final int height = bim1.getHeight();
+
+        // the single block of the coarsest level is ambiguous to start with
+        boolean[] ambiguous = new boolean[]{true};
+
+        for (int level = pyramid1.getLevelCount() - 1; level >= 0; level--) {
+            ImagePyramid.Level level1 = pyramid1.getLevel(level);
+            ImagePyramid.Level level2 = pyramid2.getLevel(level);
+            boolean stillAmbiguous = false;
+
+            for (int block = 0; block < ambiguous.length; block++) {
+                if (!ambiguous[block]) {
+                    continue;
+                }
+                int column = block % level1.columns;
+                int row = block / level1.columns;
+                int blockWidth = Math.min(width, (column + 1) * level1.blockSize) - column * level1.blockSize;
+                int blockHeight = Math.min(height, (row + 1) * level1.blockSize) - row * level1.blockSize;
+                long pixels = (long) blockWidth * blockHeight;
+                boolean overlapping = true;
+
+                for (int i = 3 * block; i < 3 * block + 3; i++) {
+                    if (Math.abs(level1.sum[i] - level2.sum[i]) > tolerance * pixels) {
+                        return false;
+                    }
+                    overlapping &= (level1.max[i] & 0xFF) - (level2.min[i] & 0xFF) <= tolerance
+                            && (level2.max[i] & 0xFF) - (level1.min[i] & 0xFF) <= tolerance;
+                }
+
+                ambiguous[block] = !overlapping;
+                stillAmbiguous |= !overlapping;
+            }
+
+            if (!stillAmbiguous) {
+                return true;
+            }
+            if (level > 0) {
+                ambiguous = refine(ambiguous, level1, pyramid1.getLevel(level - 1));
+            }
+        }
+
+        return compareBlocks(bim1, bim2, ambiguous, pyramid1.getLevel(0));
+    }
+
+    /**
+     * Mark the blocks of the finer level covered by the ambiguous blocks.
+     */
+    private static boolean[] refine(boolean[] ambiguous, ImagePyramid.Level coarser, ImagePyramid.Level finer) {
+        boolean[] result = new boolean[finer.columns * finer.rows];
+        for (int row = 0; row < finer.rows; row++) {
+            for (int column = 0; column < finer.columns; column++) {
+                result[row * finer.columns + column] = ambiguous[(row / 2) * coarser.columns + column / 2];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compare the pixels of the ambiguous blocks of the finest level in parallel bands
+     * of block rows, neighbouring blocks of a row are read at once.
+     */
+    private boolean compareBlocks(BufferedImage bim1, BufferedImage bim2, final boolean[] ambiguous, final ImagePyramid.Level finest) {
+        final int width = bim1.getWidth();
+        final int height = bim1.getHeight();
+        final PixelAccess pixelAccess1 = PixelAccess.of(bim1);
+        final PixelAccess pixelAccess2 = PixelAccess.of(bim2);
+        final AtomicBoolean different = new AtomicBoolean();
+
+        RowBands.process(finest.rows, 1, new RowBands.Task() {
+            public void process(int minRow, int maxRow) {
+                int[] row1 = new int[width];
+                int[] row2 = new int[width];
+                for (int row = minRow; row < maxRow && !different.get(); row++) {
+                    int column = 0;
+                    while (column < finest.columns) {
+                        if (!ambiguous[row * finest.columns + column]) {
+                            column++;
+                            continue;
+                        }
+                        int firstColumn = column;
+                        while (column < finest.columns && ambiguous[row * finest.columns + column]) {
+                            column++;
+                        }
+                        int minX = firstColumn * finest.blockSize;
+                        int length = Math.min(width, column * finest.blockSize) - minX;
+                        for (int y = row * finest.blockSize; y < Math.min(height, (row + 1) * finest.blockSize); y++) {
+                            pixelAccess1.getRGB(minX, y, length, row1, 0);
+                            pixelAccess2.getRGB(minX, y, length, row2, 0);
+                            for (int x = 0; x < length; x++) {
+                                if (row1[x] != row2[x] && IdenticalImageComparator.isDifferent(row1[x], row2[x], tolerance)) {
+                                    different.set(true);
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        });
+
+        return !different.get();
+    }
+}
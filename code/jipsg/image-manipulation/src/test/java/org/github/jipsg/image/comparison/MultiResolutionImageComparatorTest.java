@@ -0,0 +1,86 @@
+package org.github.jipsg.image.comparison;
+
+import org.github.jipsg.common.image.BufferedImageFactory;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The answers of the coarse-to-fine comparison must match the pixel by pixel comparison.
+ */
+public class MultiResolutionImageComparatorTest {
+
+    @Test
+    public void testDocumentPages() throws Exception {
+
+        final BufferedImage bufferedImage1 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final BufferedImage bufferedImage2 = BufferedImageFactory.create("../../images/samples/open-office-02.pdf.300.0.png");
+        final BufferedImage bufferedImage3 = BufferedImageFactory.create("../../images/samples/open-office-01.pdf.300.0.png");
+        final IdenticalImageComparator imageComparator = new IdenticalImageComparator();
+        final ImagePyramid imagePyramid1 = ImagePyramid.of(bufferedImage1);
+
+        assertTrue(imageComparator.identical(bufferedImage1, imagePyramid1, bufferedImage3, ImagePyramid.of(bufferedImage3), 1));
+        assertFalse(imageComparator.identical(bufferedImage1, imagePyramid1, bufferedImage2, ImagePyramid.of(bufferedImage2), 1));
+
+        // a single pixel changed within a line of text
+        bufferedImage3.setRGB(1000, 2000, bufferedImage3.getRGB(1000, 2000) ^ 0x808080);
+        assertFalse(imageComparator.identical(bufferedImage1, imagePyramid1, bufferedImage3, ImagePyramid.of(bufferedImage3), 1));
+    }
+
+    @Test
+    public void testMatchesIdenticalImageComparator() {
+
+        final Random random = new Random(11);
+        final IdenticalImageComparator identicalImageComparator = new IdenticalImageComparator();
+
+        for (int i = 0; i < 200; i++) {
+            final int width = 1 + random.nextInt(150);
+            final int height = 1 + random.nextInt(150);
+            final BufferedImage bufferedImage1 = createImage(width, height, random);
+            final BufferedImage bufferedImage2 = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            bufferedImage2.setRGB(0, 0, width, height, bufferedImage1.getRGB(0, 0, width, height, null, 0, width), 0, width);
+
+            // change a few pixels by a few color steps
+            for (int j = random.nextInt(4); j > 0; j--) {
+                final int x = random.nextInt(width);
+                final int y = random.nextInt(height);
+                final int rgb = bufferedImage2.getRGB(x, y);
+                final int shift = 8 * random.nextInt(3);
+                final int value = Math.max(0, Math.min(255, ((rgb >> shift) & 0xFF) + random.nextInt(7) - 3));
+                bufferedImage2.setRGB(x, y, (rgb & ~(0xFF << shift)) | (value << shift));
+            }
+
+            for (int tolerance = 0; tolerance <= 3; tolerance++) {
+                assertEquals("image " + i + " with tolerance " + tolerance,
+                        identicalImageComparator.identical(bufferedImage1, bufferedImage2, tolerance),
+                        identicalImageComparator.identical(bufferedImage1, ImagePyramid.of(bufferedImage1), bufferedImage2, ImagePyramid.of(bufferedImage2), tolerance));
+            }
+        }
+    }
+
+    /**
+     * A white page with a few gray boxes and noise.
+     */
+    private static BufferedImage createImage(int width, int height, Random random) {
+        final BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = bufferedImage.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        for (int i = 0; i < 3; i++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            graphics.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(40), random.nextInt(40));
+        }
+        graphics.dispose();
+        for (int i = random.nextInt(20); i > 0; i--) {
+            bufferedImage.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt());
+        }
+        return bufferedImage;
+    }
+}
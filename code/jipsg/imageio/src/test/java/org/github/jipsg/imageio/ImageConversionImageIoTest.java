@@ -16,19 +16,41 @@
  */
 package org.github.jipsg.imageio;
 
+import org.github.jipsg.common.image.AsyncImageProcessor;
+import org.github.jipsg.common.image.BufferedImageOperations;
+import org.github.jipsg.common.image.RasterPool;
+import org.github.jipsg.common.image.ops.AlphaChannelImageOp;
+import org.github.jipsg.common.image.ops.InvertImageOp;
+import org.github.jipsg.common.image.ops.LookupPointOp;
+import org.github.jipsg.common.image.ops.ParallelImageOp;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import javax.imageio.IIOException;
+import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Load various images.
@@ -176,4 +198,235 @@ public class ImageConversionImageIoTest extends BaseImageIoTest {
             writeBufferedImage(rgbBufferedImage, formatName, targetImageFile);
         }
     }
+
+    // ======================================================================
+    // Asynchronous conversion
+    // ======================================================================
+
+    /**
+     * Convert images concurrently - reading the files runs on the I/O
+     * executor, decoding, scaling and encoding on the CPU executor.
+     */
+    @Test
+    public void testConvertImagesAsynchronously() throws Exception {
+
+        List<File> sourceImageFileList = new ArrayList<File>();
+        sourceImageFileList.add(getImageFile("gif", "marble.gif"));
+        sourceImageFileList.add(getImageFile("jpg", "marble.jpg"));
+        sourceImageFileList.add(getImageFile("png", "marble.png"));
+        sourceImageFileList.add(getImageFile("willhaben", "willhaben-01.jpg"));
+
+        final AsyncImageProcessor asyncImageProcessor = new AsyncImageProcessor(2);
+        List<CompletableFuture<File>> futures = new ArrayList<CompletableFuture<File>>();
+
+        try {
+            for (File sourceImageFile : sourceImageFileList) {
+                final File targetImageFile = createOutputFileName("testConvertImagesAsynchronously", sourceImageFile, "png");
+                futures.add(asyncImageProcessor.decodeAsync(sourceImageFile)
+                        .thenCompose(bufferedImage -> asyncImageProcessor.resampleAsync(bufferedImage, new Dimension(320, 320)))
+                        .thenCompose(bufferedImage -> asyncImageProcessor.encodeAsync(bufferedImage, "png", targetImageFile)));
+            }
+
+            for (CompletableFuture<File> future : futures) {
+                BufferedImage bufferedImage = createBufferedImage(future.get());
+                assertValidBufferedImage(bufferedImage);
+                assertTrue(bufferedImage.getWidth() <= 320 && bufferedImage.getHeight() <= 320);
+            }
+        } finally {
+            asyncImageProcessor.close();
+        }
+    }
+
+    /**
+     * More jobs than a single CPU thread admits make the calling thread wait while
+     * the resamples chained to the decodes never wait, a stream larger than the
+     * maximum input bytes is rejected.
+     */
+    @Test
+    public void testDecodeImagesAsynchronouslyWithinLimits() throws Exception {
+
+        File sourceImageFile = getImageFile("jpg", "marble.jpg");
+        final AsyncImageProcessor asyncImageProcessor = new AsyncImageProcessor(1);
+        List<CompletableFuture<BufferedImage>> futures = new ArrayList<CompletableFuture<BufferedImage>>();
+
+        try {
+            for (int i = 0; i < 4 * AsyncImageProcessor.JOBS_PER_THREAD; i++) {
+                futures.add(asyncImageProcessor.decodeAsync(sourceImageFile, new Dimension(64, 64))
+                        .thenCompose(bufferedImage -> asyncImageProcessor.resampleAsync(bufferedImage, new Dimension(32, 32))));
+            }
+            for (CompletableFuture<BufferedImage> future : futures) {
+                BufferedImage bufferedImage = future.get(60, TimeUnit.SECONDS);
+                assertValidBufferedImage(bufferedImage);
+                assertTrue(bufferedImage.getWidth() <= 32 && bufferedImage.getHeight() <= 32);
+            }
+
+            asyncImageProcessor.setMaxInputBytes(sourceImageFile.length() - 1);
+            InputStream inputStream = new FileInputStream(sourceImageFile);
+            try {
+                asyncImageProcessor.decodeAsync(inputStream).get();
+                fail("Expecting IIOException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IIOException);
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            asyncImageProcessor.close();
+        }
+    }
+
+    // ======================================================================
+    // Fused point operations
+    // ======================================================================
+
+    /**
+     * Applying a chain of point operations in a single pass yields the same
+     * pixels and image type as applying them one after another.
+     */
+    @Test
+    public void testApplyFusedPointOps() throws Exception {
+
+        BufferedImageOp[] bufferedImageOps = {
+                LookupPointOp.levels(10, 240),
+                new InvertImageOp(),
+                LookupPointOp.rescale(0.9f, 12f),
+                new AlphaChannelImageOp(),
+                new InvertImageOp()
+        };
+
+        final int[] imageTypes = {
+                BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_INT_ARGB,
+                BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR
+        };
+
+        BufferedImage sourceImage = createBufferedImage(getImageFile("png", "test-image-transparent.png"));
+
+        for (int imageType : imageTypes) {
+            BufferedImage bufferedImage = new BufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), imageType);
+            Graphics2D graphics = bufferedImage.createGraphics();
+            graphics.drawImage(sourceImage, 0, 0, null);
+            graphics.dispose();
+
+            BufferedImage expectedImage = bufferedImage;
+            for (BufferedImageOp bufferedImageOp : bufferedImageOps) {
+                expectedImage = bufferedImageOp.filter(expectedImage, null);
+            }
+
+            BufferedImage fusedImage = BufferedImageOperations.apply(bufferedImage, bufferedImageOps);
+
+            int width = expectedImage.getWidth();
+            int height = expectedImage.getHeight();
+            assertEquals(expectedImage.getType(), fusedImage.getType());
+            assertArrayEquals("type " + imageType,
+                    expectedImage.getRGB(0, 0, width, height, null, 0, width),
+                    fusedImage.getRGB(0, 0, width, height, null, 0, width));
+        }
+    }
+
+    /**
+     * Intermediate images of an operation chain are taken from the raster pool
+     * and returned to it, so running the chain again reuses their arrays.
+     */
+    @Test
+    public void testApplyOpsWithRasterPool() throws Exception {
+
+        BufferedImageOp[] bufferedImageOps = {
+                LookupPointOp.levels(10, 240),
+                new InvertImageOp(),
+                new AffineTransformOp(new AffineTransform(), AffineTransformOp.TYPE_NEAREST_NEIGHBOR),
+                new InvertImageOp(),
+                new AlphaChannelImageOp()
+        };
+
+        BufferedImage bufferedImage = createBufferedImage(getImageFile("willhaben", "willhaben-01.jpg"));
+        RasterPool rasterPool = RasterPool.getInstance();
+
+        BufferedImage expectedImage = bufferedImage;
+        for (BufferedImageOp bufferedImageOp : bufferedImageOps) {
+            expectedImage = bufferedImageOp.filter(expectedImage, null);
+        }
+
+        BufferedImageOperations.apply(bufferedImage, bufferedImageOps);
+        long hits = rasterPool.getHits();
+        BufferedImage result = BufferedImageOperations.apply(bufferedImage, bufferedImageOps);
+        System.out.println(rasterPool);
+
+        assertTrue("Expecting pooled rasters being reused", rasterPool.getHits() > hits);
+        assertEquals(expectedImage.getType(), result.getType());
+        int width = expectedImage.getWidth();
+        int height = expectedImage.getHeight();
+        assertArrayEquals(
+                expectedImage.getRGB(0, 0, width, height, null, 0, width),
+                result.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    // ======================================================================
+    // Parallel image operations
+    // ======================================================================
+
+    /**
+     * Filtering row bands in parallel yields the same pixels as filtering
+     * the whole image, both for point and for convolution operations.
+     */
+    @Test
+    public void testParallelImageOp() throws Exception {
+
+        Kernel sharpenKernel = new Kernel(3, 3, new float[]{
+                0f, -1f, 0f,
+                -1f, 5f, -1f,
+                0f, -1f, 0f
+        });
+
+        BufferedImageOp[] bufferedImageOps = {
+                new ConvolveOp(sharpenKernel, ConvolveOp.EDGE_NO_OP, null),
+                new ConvolveOp(sharpenKernel, ConvolveOp.EDGE_ZERO_FILL, null),
+                new InvertImageOp(),
+                new AlphaChannelImageOp(),
+                LookupPointOp.levels(10, 240)
+        };
+
+        BufferedImage sourceImage = createBufferedImage(getImageFile("willhaben", "willhaben-01.jpg"));
+        BufferedImage bufferedImage = new BufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = bufferedImage.createGraphics();
+        graphics.drawImage(sourceImage, 0, 0, null);
+        graphics.dispose();
+
+        int width = bufferedImage.getWidth();
+        int height = bufferedImage.getHeight();
+
+        // use a dedicated pool to get bands even on a single core machine
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+
+        try {
+            for (BufferedImageOp bufferedImageOp : bufferedImageOps) {
+                ParallelImageOp parallelImageOp = new ParallelImageOp(bufferedImageOp, ParallelImageOp.getDefaultHalo(bufferedImageOp), forkJoinPool);
+
+                long startTime = System.nanoTime();
+                BufferedImage expectedImage = bufferedImageOp.filter(bufferedImage, null);
+                long sequentialNanos = System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                BufferedImage result = parallelImageOp.filter(bufferedImage, null);
+                long parallelNanos = System.nanoTime() - startTime;
+
+                System.out.println(bufferedImageOp.getClass().getSimpleName() + " : sequential=" + sequentialNanos / 1000000 + " ms, parallel=" + parallelNanos / 1000000 + " ms");
+                assertEquals(expectedImage.getType(), result.getType());
+                assertArrayEquals(bufferedImageOp.getClass().getSimpleName(),
+                        expectedImage.getRGB(0, 0, width, height, null, 0, width),
+                        result.getRGB(0, 0, width, height, null, 0, width));
+            }
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * The rows an arbitrary operation depends on are not known, e.g. a rotation.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testParallelImageOpWithoutHalo() throws Exception {
+        new ParallelImageOp(new AffineTransformOp(AffineTransform.getRotateInstance(0.1), AffineTransformOp.TYPE_BILINEAR));
+    }
 }
@@ -16,20 +16,39 @@
  */
 package org.github.jipsg.imageio;
 
+import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.ImageInfo;
+import org.github.jipsg.common.image.ImageLimitExceededException;
+import org.github.jipsg.common.image.ImageLimits;
+import org.github.jipsg.common.image.MemoryAdmissionController;
+import org.github.jipsg.common.image.io.ImageCodecPool;
+import org.github.jipsg.common.image.io.ImageFormat;
+import org.github.jipsg.common.image.io.ImageFormatDetector;
+import org.github.jipsg.common.image.io.ImageReaderRoutingTable;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Load various images.
@@ -116,6 +135,79 @@ public class ImageLoadImageIoTest extends BaseImageIoTest {
         }
     }
 
+    /**
+     * Load images from in-memory sources without writing them to disk first.
+     */
+    @Test
+    public void testLoadFromMemorySources() throws Exception {
+
+        File sourceImageFile = getImageFile("jpg", "marble.jpg");
+        byte[] bytes = Files.readAllBytes(sourceImageFile.toPath());
+        ByteBuffer directByteBuffer = ByteBuffer.allocateDirect(bytes.length);
+        directByteBuffer.put(bytes).flip();
+
+        assertValidBufferedImage(BufferedImageFactory.create(bytes));
+        assertValidBufferedImage(BufferedImageFactory.create(ByteBuffer.wrap(bytes)));
+        assertValidBufferedImage(BufferedImageFactory.create(directByteBuffer));
+        assertValidBufferedImage(BufferedImageFactory.create(new ByteArrayInputStream(bytes)));
+        assertValidBufferedImage(BufferedImageFactory.create(sourceImageFile.toPath()));
+        assertEquals("Expecting untouched byte buffer", 0, directByteBuffer.position());
+    }
+
+    /**
+     * Decode two images with a single pooled JPEG reader.
+     */
+    @Test
+    public void testReuseImageReaderFromPool() throws Exception {
+
+        ImageCodecPool imageCodecPool = new ImageCodecPool(2);
+
+        for (int i = 0; i < 2; i++) {
+            ImageInputStream imageInputStream = ImageIO.createImageInputStream(getImageFile("jpg", "marble.jpg"));
+            ImageReader imageReader = imageCodecPool.borrowReader(imageInputStream);
+            try {
+                imageReader.setInput(imageInputStream, true, true);
+                assertValidBufferedImage(imageReader.read(0));
+            } finally {
+                imageCodecPool.returnReader(imageReader);
+                imageInputStream.close();
+            }
+        }
+
+        assertEquals(1, imageCodecPool.getCreations());
+        assertEquals(1, imageCodecPool.getHits());
+    }
+
+    /**
+     * Detect the image format by its magic bytes and route it to a reader.
+     */
+    @Test
+    public void testDetectImageFormat() throws Exception {
+
+        assertEquals(ImageFormat.JPEG, detectImageFormat(getImageFile("jpg", "marble.jpg")));
+        assertEquals(ImageFormat.PNG, detectImageFormat(getImageFile("png", "marble.png")));
+        assertEquals(ImageFormat.GIF, detectImageFormat(getImageFile("gif", "marble.gif")));
+        assertEquals(ImageFormat.TIFF, detectImageFormat(getImageFile("tiff", "marble.tiff")));
+        assertEquals(ImageFormat.JPEG2000, detectImageFormat(getImageFile("jp2", "marble.jp2")));
+        assertEquals(ImageFormat.JBIG2, detectImageFormat(getImageFile("jbig", "test-image-01.jb2")));
+        assertEquals(ImageFormat.PDF, detectImageFormat(getImageFile("scans", "scan-jpg-color-300-dpi.pdf")));
+        assertEquals(ImageFormat.UNKNOWN, ImageFormatDetector.detect(new byte[]{1, 2, 3}, 3));
+
+        ImageReaderRoutingTable imageReaderRoutingTable = new ImageReaderRoutingTable();
+        assertTrue(Arrays.asList(imageReaderRoutingTable.getImageReaderSpi(ImageFormat.PNG).getFormatNames()).contains("png"));
+    }
+
+    private ImageFormat detectImageFormat(File file) throws Exception {
+        ImageInputStream imageInputStream = ImageIO.createImageInputStream(file);
+        try {
+            ImageFormat result = ImageFormatDetector.detect(imageInputStream);
+            assertEquals("Expecting unchanged stream position", 0, imageInputStream.getStreamPosition());
+            return result;
+        } finally {
+            imageInputStream.close();
+        }
+    }
+
     // ======================================================================
     // JPEG
     // ======================================================================
@@ -202,4 +294,124 @@ public class ImageLoadImageIoTest extends BaseImageIoTest {
         assertEquals(19000, dimension.height);
         assertEquals(19000, dimension.width);
     }
+
+    /**
+     * Only read the image header of the decompression bomb - no raster is allocated.
+     */
+    @Test
+    public void testProbeLargeImage() throws Exception {
+        ImageInfo imageInfo = BufferedImageFactory.probe(getImageFile("bombs", "picture-1G-19000x19000.png"));
+        assertEquals("png", imageInfo.getFormatName());
+        assertEquals(19000, imageInfo.getWidth());
+        assertEquals(19000, imageInfo.getHeight());
+    }
+
+    /**
+     * Reject the decompression bomb before decoding it.
+     */
+    @Test
+    public void testRejectLargeImage() throws Exception {
+        ImageLimits imageLimits = new ImageLimits(50 * 1000 * 1000, 256 * 1024 * 1024);
+        try {
+            BufferedImageFactory.create(getImageFile("bombs", "picture-1G-19000x19000.png"), imageLimits);
+            fail("Expecting ImageLimitExceededException");
+        } catch (ImageLimitExceededException e) {
+            assertEquals(19000, e.getImageInfo().getWidth());
+        }
+        assertValidBufferedImage(BufferedImageFactory.create(getImageFile("jpg", "marble.jpg"), imageLimits));
+    }
+
+    /**
+     * Reserve the raster memory before decoding - a decompression bomb never fits
+     * into the budget while regular images wait until memory is released.
+     */
+    @Test
+    public void testMemoryAdmissionControl() throws Exception {
+
+        File sourceImageFile = getImageFile("jpg", "marble.jpg");
+        ImageInfo imageInfo = BufferedImageFactory.probe(sourceImageFile);
+        MemoryAdmissionController memoryAdmissionController = new MemoryAdmissionController(
+                MemoryAdmissionController.estimateBytes(imageInfo, 2) + 1024);
+
+        try {
+            memoryAdmissionController.reserve(getImageFile("bombs", "picture-1G-19000x19000.png"), null, 1);
+            fail("Expecting ImageLimitExceededException");
+        } catch (ImageLimitExceededException e) {
+            assertEquals(19000, e.getImageInfo().getWidth());
+        }
+
+        MemoryAdmissionController.Reservation reservation = memoryAdmissionController.reserve(imageInfo, 2);
+        assertNull(memoryAdmissionController.tryReserve(imageInfo, 1, 10, TimeUnit.MILLISECONDS));
+        assertValidBufferedImage(BufferedImageFactory.create(sourceImageFile));
+        reservation.close();
+        reservation.close();
+
+        reservation = memoryAdmissionController.reserve(sourceImageFile, new Dimension(320, 320), 1);
+        assertTrue(reservation.getBytes() < imageInfo.getRasterBytes());
+        reservation.close();
+        assertEquals(memoryAdmissionController.getBudgetBytes() / 1024 * 1024, memoryAdmissionController.getAvailableBytes());
+    }
+
+    /**
+     * Decoding reserves the raster memory from the controller of the factory and
+     * releases it afterwards.
+     */
+    @Test
+    public void testMemoryAdmissionControlWhenDecoding() throws Exception {
+
+        File sourceImageFile = getImageFile("jpg", "marble.jpg");
+        ImageInfo imageInfo = BufferedImageFactory.probe(sourceImageFile);
+        MemoryAdmissionController memoryAdmissionController = new MemoryAdmissionController(
+                MemoryAdmissionController.estimateBytes(imageInfo, 1) / 2);
+
+        BufferedImageFactory.setMemoryAdmissionController(memoryAdmissionController);
+
+        try {
+            try {
+                BufferedImageFactory.create(sourceImageFile);
+                fail("Expecting ImageLimitExceededException");
+            } catch (ImageLimitExceededException e) {
+                assertEquals(imageInfo.getWidth(), e.getImageInfo().getWidth());
+            }
+
+            BufferedImage bufferedImage = BufferedImageFactory.create(sourceImageFile, new Dimension(imageInfo.getWidth() / 4, imageInfo.getHeight() / 4));
+            assertValidBufferedImage(bufferedImage);
+            assertEquals(memoryAdmissionController.getBudgetBytes() / 1024 * 1024, memoryAdmissionController.getAvailableBytes());
+        } finally {
+            BufferedImageFactory.setMemoryAdmissionController(MemoryAdmissionController.getInstance());
+        }
+    }
+
+    /**
+     * Decoding within a job uses the reservation of the job instead of waiting for
+     * a second one, the job's reservation may be closed by another thread.
+     */
+    @Test
+    public void testMemoryAdmissionControlWhenDecodingWithinJob() throws Exception {
+
+        File sourceImageFile = getImageFile("jpg", "marble.jpg");
+        ImageInfo imageInfo = BufferedImageFactory.probe(sourceImageFile);
+        final MemoryAdmissionController memoryAdmissionController = new MemoryAdmissionController(
+                MemoryAdmissionController.estimateBytes(imageInfo, 1) + 1024);
+
+        BufferedImageFactory.setMemoryAdmissionController(memoryAdmissionController);
+
+        try {
+            final MemoryAdmissionController.Reservation reservation = memoryAdmissionController.reserve(imageInfo, 1);
+            assertValidBufferedImage(BufferedImageFactory.create(sourceImageFile, ImageLimits.UNLIMITED, reservation));
+
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    reservation.close();
+                }
+            });
+            thread.start();
+            thread.join();
+
+            assertEquals(memoryAdmissionController.getBudgetBytes() / 1024 * 1024, memoryAdmissionController.getAvailableBytes());
+            assertValidBufferedImage(BufferedImageFactory.create(sourceImageFile));
+        } finally {
+            BufferedImageFactory.setMemoryAdmissionController(MemoryAdmissionController.getInstance());
+        }
+    }
 }
@@ -16,15 +16,27 @@
  */
 package org.github.jipsg.imageio;
 
+import org.github.jipsg.common.image.StripedImageProcessor;
+import org.github.jipsg.common.image.graph.DecodeNode;
+import org.github.jipsg.common.image.graph.ImageNode;
+import org.github.jipsg.common.image.graph.TileCache;
+import org.github.jipsg.common.image.ops.InvertImageOp;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Load various images.
  */
@@ -63,6 +75,91 @@ public class ImageResamplingImageIoTest extends BaseImageIoTest {
         }
     }
 
+    /**
+     * Decode various image types directly to 640 x 640 using source subsampling.
+     */
+    @Test
+    public void testSubsampledDecodingAsJpeg() throws Exception {
+
+        String formatName = "jpeg";
+        List<File> sourceImageFileList = new ArrayList<File>();
+
+        sourceImageFileList.add(getImageFile("jpg", "marble.jpg"));
+        sourceImageFileList.add(getImageFile("png", "marble.png"));
+        sourceImageFileList.add(getImageFile("gif", "marble.gif"));
+        sourceImageFileList.add(getImageFile("willhaben", "willhaben-01.jpg"));
+
+        for (File sourceImageFile : sourceImageFileList) {
+            BufferedImage bufferedImage = createBufferedImage(sourceImageFile, 640, 640);
+            assertValidBufferedImage(bufferedImage);
+            assertTrue(bufferedImage.getWidth() <= 640 && bufferedImage.getHeight() <= 640);
+            assertTrue(bufferedImage.getWidth() == 640 || bufferedImage.getHeight() == 640);
+            File targetImageFile = createOutputFileName("testSubsampledDecodingAsJpeg", sourceImageFile, formatName);
+            writeBufferedImage(bufferedImage, formatName, targetImageFile);
+        }
+    }
+
+    /**
+     * Scale large images strip by strip without holding the whole raster in memory.
+     */
+    @Test
+    public void testStripedProcessingAsPng() throws Exception {
+
+        String formatName = "png";
+        List<File> sourceImageFileList = new ArrayList<File>();
+
+        sourceImageFileList.add(getImageFile("jpg", "marble.jpg"));
+        sourceImageFileList.add(getImageFile("bombs", "picture-100M-6000x6000.png"));
+
+        StripedImageProcessor stripedImageProcessor = new StripedImageProcessor();
+        stripedImageProcessor.setStripHeight(64);
+
+        for (File sourceImageFile : sourceImageFileList) {
+            File targetImageFile = createOutputFileName("testStripedProcessingAsPng", sourceImageFile, formatName);
+            stripedImageProcessor.process(sourceImageFile, new Dimension(600, 600), formatName, targetImageFile);
+            BufferedImage bufferedImage = createBufferedImage(targetImageFile);
+            assertValidBufferedImage(bufferedImage);
+            assertTrue(bufferedImage.getWidth() == 600 || bufferedImage.getHeight() == 600);
+        }
+    }
+
+    /**
+     * Crop and scale an image lazily - only the strips covering the crop
+     * region are decoded and the preview is computed while being encoded.
+     */
+    @Test
+    public void testLazyImageGraphAsPng() throws Exception {
+
+        File sourceImageFile = getImageFile("willhaben", "willhaben-01.jpg");
+        Rectangle region = new Rectangle(300, 500, 700, 400);
+        TileCache tileCache = new TileCache(16 * 1024 * 1024);
+        DecodeNode decodeNode = DecodeNode.open(sourceImageFile);
+
+        try {
+            decodeNode.setTileCache(tileCache);
+            ImageNode cropNode = decodeNode.crop(region);
+            BufferedImage croppedImage = cropNode.toBufferedImage();
+
+            // a strip is 256 rows high, so the rows 500 - 899 touch three strips
+            assertEquals(3, tileCache.getMisses());
+            BufferedImage expectedImage = createBufferedImage(sourceImageFile).getSubimage(region.x, region.y, region.width, region.height);
+            assertArrayEquals(
+                    expectedImage.getRGB(0, 0, region.width, region.height, null, 0, region.width),
+                    croppedImage.getRGB(0, 0, region.width, region.height, null, 0, region.width));
+
+            ImageNode previewNode = cropNode.scale(350, 200).apply(new InvertImageOp());
+            File targetImageFile = createOutputFileName("testLazyImageGraphAsPng", sourceImageFile, "png");
+            assertTrue(ImageIO.write(previewNode.toRenderedImage(), "png", targetImageFile));
+
+            BufferedImage bufferedImage = createBufferedImage(targetImageFile);
+            assertValidBufferedImage(bufferedImage);
+            assertEquals(350, bufferedImage.getWidth());
+            assertEquals(200, bufferedImage.getHeight());
+        } finally {
+            decodeNode.close();
+        }
+    }
+
     @Test
     public void testWriteImageWithQualityAndDpi() throws Exception {
 
@@ -16,15 +16,16 @@
  */
 package org.github.jipsg.jai;
 
-import com.sun.imageio.plugins.jpeg.JPEGImageWriter;
 import org.github.jipsg.common.AbstractImageTest;
 import org.github.jipsg.common.image.BufferedImageUtils;
+import org.github.jipsg.common.image.io.ImageCodecPool;
 import org.w3c.dom.Element;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
 import javax.imageio.stream.ImageOutputStream;
@@ -60,7 +61,7 @@ public class AbstractJaiTest extends AbstractImageTest {
     public void writeBufferedImage(BufferedImage bufferedImage, float quality, int dpi, String formatName, File targetFile) throws Exception {
 
         if (formatName.equalsIgnoreCase("jpg") || formatName.equalsIgnoreCase("jpeg")) {
-            JPEGImageWriter imageWriter = (JPEGImageWriter) ImageIO.getImageWritersBySuffix(formatName).next();
+            ImageWriter imageWriter = ImageCodecPool.getInstance().borrowWriter(formatName);
             ImageWriteParam writeParam = imageWriter.getDefaultWriteParam();
             ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
             IIOMetadata metadata = imageWriter.getDefaultImageMetadata(typeSpecifier, writeParam);
@@ -90,6 +91,7 @@ public class AbstractJaiTest extends AbstractImageTest {
                 imageWriter.setOutput(stream);
                 imageWriter.write(metadata, new IIOImage(bufferedImage, null, metadata), writeParam);
             } finally {
+                ImageCodecPool.getInstance().returnWriter(imageWriter);
                 stream.close();
             }
         } else {
@@ -28,6 +28,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.image.AffineTransformOp;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,12 +37,29 @@ import java.util.Map;
  */
 public class BaseSanselanTest extends AbstractImageTest {
 
+    /**
+     * The formats Commons Imaging has a reader for, JPEG being limited to baseline
+     * images - formats not detected by the router (e.g. ICO or PSD) are UNKNOWN.
+     */
+    private static final EnumSet<org.github.jipsg.common.image.io.ImageFormat> DECODABLE_IMAGE_FORMATS = EnumSet.of(
+            org.github.jipsg.common.image.io.ImageFormat.JPEG,
+            org.github.jipsg.common.image.io.ImageFormat.PNG,
+            org.github.jipsg.common.image.io.ImageFormat.GIF,
+            org.github.jipsg.common.image.io.ImageFormat.TIFF,
+            org.github.jipsg.common.image.io.ImageFormat.BMP,
+            org.github.jipsg.common.image.io.ImageFormat.UNKNOWN);
+
     @Override
     public void setup() {
         super.setModuleName("sanselan");
         super.setup();
     }
 
+    @Override
+    public boolean canDecode(org.github.jipsg.common.image.io.ImageFormat imageFormat) {
+        return DECODABLE_IMAGE_FORMATS.contains(imageFormat);
+    }
+
     @Override
     public BufferedImage createBufferedImage(File file) throws Exception {
         final Map<String, Object> params = new HashMap<String, Object>();
@@ -17,6 +17,9 @@
 package org.github.jipsg.sanselan;
 
 import org.apache.commons.imaging.Imaging;
+import org.github.jipsg.common.image.backend.ImageBackendRouter;
+import org.github.jipsg.common.image.backend.ImageIoBackend;
+import org.github.jipsg.common.image.io.ImageFormat;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -27,6 +30,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Load various images using Apache Commons Imaging.
@@ -167,4 +173,70 @@ public class LoadImageSanselanTest extends BaseSanselanTest {
         }
         assertEquals("Expect to have 2 pages", 2, bufferedImageList.size());
     }
+
+    // ======================================================================
+    // Backend routing
+    // ======================================================================
+
+    /**
+     * Commons Imaging fails on plain JPEGs so the router falls back to ImageIO
+     * and prefers ImageIO for subsequent JPEGs.
+     */
+    @Test
+    public void testRouteJpegToImageIo() throws Exception {
+
+        ImageIoBackend imageIoBackend = new ImageIoBackend();
+        ImageBackendRouter imageBackendRouter = new ImageBackendRouter(this, imageIoBackend);
+
+        assertValidBufferedImage(imageBackendRouter.createBufferedImage(getImageFile("jpg", "test-image-rgb-01.jpg")));
+        assertValidBufferedImage(imageBackendRouter.createBufferedImage(getImageFile("jpg", "marble.jpg")));
+
+        assertSame(imageIoBackend, imageBackendRouter.getPreferredImageBackend(ImageFormat.JPEG));
+        assertEquals(1, imageBackendRouter.getStatistics(this, ImageFormat.JPEG).getFailures());
+        assertEquals(2, imageBackendRouter.getStatistics(imageIoBackend, ImageFormat.JPEG).getSuccesses());
+    }
+
+    /**
+     * The first backend decoding a PNG becomes preferred, exploring the other backend
+     * every second image shows that it is faster so the router switches over.
+     */
+    @Test
+    public void testPreferFasterImageBackend() throws Exception {
+
+        ImageIoBackend slowImageIoBackend = new ImageIoBackend() {
+            @Override
+            public String getName() {
+                return "slow-imageio";
+            }
+
+            @Override
+            public BufferedImage createBufferedImage(File file) throws Exception {
+                Thread.sleep(50);
+                return super.createBufferedImage(file);
+            }
+        };
+        ImageIoBackend imageIoBackend = new ImageIoBackend();
+        ImageBackendRouter imageBackendRouter = new ImageBackendRouter(slowImageIoBackend, imageIoBackend);
+        imageBackendRouter.setExplorationInterval(2);
+        File sourceImageFile = getImageFile("png", "marble.png");
+
+        assertValidBufferedImage(imageBackendRouter.createBufferedImage(sourceImageFile));
+        assertSame(slowImageIoBackend, imageBackendRouter.getPreferredImageBackend(ImageFormat.PNG));
+
+        for (int i = 0; i < 3; i++) {
+            assertValidBufferedImage(imageBackendRouter.createBufferedImage(sourceImageFile));
+        }
+
+        assertSame(imageIoBackend, imageBackendRouter.getPreferredImageBackend(ImageFormat.PNG));
+        assertEquals(2, imageBackendRouter.getStatistics(slowImageIoBackend, ImageFormat.PNG).getSuccesses());
+        assertEquals(2, imageBackendRouter.getStatistics(imageIoBackend, ImageFormat.PNG).getSuccesses());
+    }
+
+    @Test
+    public void testCanDecode() throws Exception {
+        assertTrue(canDecode(ImageFormat.PNG));
+        assertTrue(canDecode(ImageFormat.TIFF));
+        assertFalse(canDecode(ImageFormat.PDF));
+        assertFalse(canDecode(ImageFormat.JPEG2000));
+    }
 }
@@ -16,6 +16,8 @@
  */
 package org.github.jipsg.twelvemonkeys;
 
+import org.github.jipsg.common.image.BufferedImageFactory;
+import org.github.jipsg.common.image.io.MappedImageSource;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -29,8 +31,13 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 /**
  * Load various images.
@@ -241,4 +248,34 @@ public class ImageLoadTwelveMonkeysTest extends BaseTwelveMonkeysTest {
         assertEquals("Expect to have 10 pages", 10, pages);
     }
 
+    /**
+     * Decode the pages of a multi-page TIFF concurrently from a single shared memory mapping.
+     */
+    @Test
+    public void testExtractPagesConcurrentlyFromMappedTiff() throws Exception {
+
+        File sourceImageFile = getImageFile("tiff", "test-multi-gray-compression-type-4.tiff");
+        final MappedImageSource mappedImageSource = MappedImageSource.of(sourceImageFile);
+        assertSame(mappedImageSource, MappedImageSource.of(sourceImageFile));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>();
+
+        try {
+            for (int i = 0; i < 2; i++) {
+                final int imageIndex = i;
+                futures.add(executorService.submit(new Callable<BufferedImage>() {
+                    public BufferedImage call() throws Exception {
+                        return BufferedImageFactory.create(mappedImageSource, imageIndex);
+                    }
+                }));
+            }
+
+            for (Future<BufferedImage> future : futures) {
+                assertValidBufferedImage(future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
 }
@@ -16,11 +16,28 @@
  */
 package org.github.jipsg.twelvemonkeys;
 
+import com.twelvemonkeys.image.ResampleOp;
+import org.github.jipsg.common.image.BufferedImageUtils;
+import org.github.jipsg.common.image.FilterWeightsCache;
+import org.github.jipsg.common.image.ResampleFilter;
+import org.github.jipsg.common.image.Resampler;
+import org.github.jipsg.common.image.ThumbnailSet;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.imageio.IIOException;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Load various images.
@@ -62,4 +79,164 @@ public class ImageScalingTwelveMonkeysTest extends BaseTwelveMonkeysTest {
         System.out.println("Scaling one source image to " + IMAGE_SCALE_DIMENSIONS.length + " previews took " + duration / sourceImageFiles.length + " ms");
     }
 
+    /**
+     * Create all previews of an image in one pass - decode once, cascade the
+     * sizes and encode them in parallel.
+     */
+    @Test
+    public void testScaleImagesWithThumbnailSet() throws Exception {
+
+        final int[] IMAGE_SCALE_DIMENSIONS = new int[] {575, 199, 80, 60};
+
+        List<Dimension> boundaries = new ArrayList<Dimension>();
+        for (int size : IMAGE_SCALE_DIMENSIONS) {
+            boundaries.add(new Dimension(size, size));
+        }
+
+        ThumbnailSet thumbnailSet = new ThumbnailSet(boundaries);
+        File sourceImageDir = new File("../../images/willhaben");
+        File[] sourceImageFiles = sourceImageDir.listFiles();
+
+        long currentTime = System.currentTimeMillis();
+
+        for (File sourceImageFile : sourceImageFiles) {
+
+            ThumbnailSet.Result result = thumbnailSet.create(sourceImageFile);
+            assertEquals(IMAGE_SCALE_DIMENSIONS.length, result.getThumbnails().size());
+
+            for (ThumbnailSet.Thumbnail thumbnail : result.getThumbnails()) {
+                int size = thumbnail.getBoundary().width;
+                assertTrue(thumbnail.getBufferedImage().getWidth() <= size && thumbnail.getBufferedImage().getHeight() <= size);
+                thumbnail.write(createOutputFileName("testScaleImagesWithThumbnailSet/" + size, sourceImageFile, "jpeg"));
+            }
+        }
+
+        long duration = System.currentTimeMillis() - currentTime;
+
+        System.out.println("Scaling one source image to " + IMAGE_SCALE_DIMENSIONS.length + " previews took " + duration / sourceImageFiles.length + " ms");
+    }
+
+    /**
+     * The 600x200 box has the larger area but a portrait image gets the larger
+     * thumbnail from the 300x380 box - the cascade has to start with the latter.
+     */
+    @Test
+    public void testScaleImageWithThumbnailSetOrderedByFittedSize() throws Exception {
+
+        ThumbnailSet thumbnailSet = new ThumbnailSet(new Dimension(600, 200), new Dimension(300, 380));
+        InputStream inputStream = new FileInputStream(getImageFile("willhaben", "willhaben-01.jpg"));
+
+        try {
+            ThumbnailSet.Result result = thumbnailSet.create(inputStream);
+            BufferedImage thumbnail1 = result.getThumbnails().get(0).getBufferedImage();
+            BufferedImage thumbnail2 = result.getThumbnails().get(1).getBufferedImage();
+            assertEquals(new Dimension(150, 200), new Dimension(thumbnail1.getWidth(), thumbnail1.getHeight()));
+            assertEquals(new Dimension(285, 380), new Dimension(thumbnail2.getWidth(), thumbnail2.getHeight()));
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * An input stream larger than the maximum input bytes is not buffered.
+     */
+    @Test(expected = IIOException.class)
+    public void testScaleImageWithThumbnailSetWithinInputLimit() throws Exception {
+
+        File sourceImageFile = getImageFile("willhaben", "willhaben-01.jpg");
+        ThumbnailSet thumbnailSet = new ThumbnailSet(new Dimension(300, 380));
+        thumbnailSet.setMaxInputBytes(sourceImageFile.length() - 1);
+        InputStream inputStream = new FileInputStream(sourceImageFile);
+
+        try {
+            thumbnailSet.create(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Compare the pure-Java Resampler with TwelveMonkeys' ResampleOp. The quality is
+     * checked against the JDK's area averaging which is the exact result of a box
+     * filter - ResampleOp itself is roughly half a pixel off. The Resampler has to be
+     * at least as fast as ResampleOp.
+     */
+    @Test
+    public void testResamplerAgainstResampleOp() throws Exception {
+
+        File sourceImageDir = new File("../../images/willhaben");
+        File[] sourceImageFiles = sourceImageDir.listFiles();
+        Resampler boxResampler = new Resampler(ResampleFilter.BOX);
+        Resampler lanczosResampler = new Resampler(ResampleFilter.LANCZOS3);
+        long resampleOpDuration = 0;
+        long resamplerDuration = 0;
+
+        for (File sourceImageFile : sourceImageFiles) {
+
+            BufferedImage bufferedImage = createBufferedImage(sourceImageFile);
+            Dimension scaledDimension = BufferedImageUtils.getScaledDimension(
+                    new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight()),
+                    new Dimension(575, 575));
+            int width = scaledDimension.width;
+            int height = scaledDimension.height;
+
+            long currentTime = System.nanoTime();
+            new ResampleOp(width, height, ResampleOp.FILTER_LANCZOS).filter(bufferedImage, null);
+            resampleOpDuration += System.nanoTime() - currentTime;
+
+            currentTime = System.nanoTime();
+            BufferedImage actual = lanczosResampler.resample(bufferedImage, width, height);
+            resamplerDuration += System.nanoTime() - currentTime;
+
+            BufferedImage expected = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = expected.createGraphics();
+            graphics.drawImage(bufferedImage.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+            graphics.dispose();
+
+            assertTrue(getMeanDelta(expected, boxResampler.resample(bufferedImage, width, height)) < 1.0);
+            assertTrue(getMeanDelta(expected, actual) < 2.0);
+            writeBufferedImage(actual, "jpeg", createOutputFileName("testResamplerAgainstResampleOp", sourceImageFile, "jpeg"));
+        }
+
+        System.out.println("ResampleOp took " + resampleOpDuration / 1000000 + " ms, Resampler took " + resamplerDuration / 1000000 + " ms");
+        assertTrue("Resampler is slower than ResampleOp", resamplerDuration <= resampleOpDuration);
+    }
+
+    /**
+     * Scaling images of the same size to the same previews computes the filter
+     * weights only once.
+     */
+    @Test
+    public void testResamplerReusesFilterWeights() throws Exception {
+
+        FilterWeightsCache filterWeightsCache = new FilterWeightsCache(8);
+        Resampler resampler = new Resampler(ResampleFilter.MITCHELL, filterWeightsCache);
+        BufferedImage bufferedImage = createBufferedImage(new File("../../images/willhaben/willhaben-01.jpg"));
+
+        for (int i = 0; i < 3; i++) {
+            for (int size : new int[] {199, 80}) {
+                assertValidBufferedImage(resampler.resample(bufferedImage, size, size));
+            }
+        }
+
+        assertEquals(4, filterWeightsCache.getMisses());
+        assertEquals(8, filterWeightsCache.getHits());
+        assertEquals(4, filterWeightsCache.size());
+    }
+
+    private static double getMeanDelta(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        long sum = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int rgb1 = expected.getRGB(x, y);
+                int rgb2 = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    sum += Math.abs(((rgb1 >> shift) & 0xFF) - ((rgb2 >> shift) & 0xFF));
+                }
+            }
+        }
+        return (double) sum / (3L * expected.getWidth() * expected.getHeight());
+    }
 }